@@ -17,4 +17,8 @@ public class ClientConfig {
 
     // network interface name for multicast group joining
     public String netIfName;
+
+    // format of the request and response bodies, "json" (the default) or
+    // "binary"
+    public String bodyFormat;
 }
@@ -5,7 +5,8 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.rmi.NotBoundException;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import winsome.lib.http.BodyFormat;
+import winsome.lib.json.JsonCodecs;
 
 public class ClientMain {
     public static void main(String[] args) {
@@ -27,6 +28,9 @@ public class ClientMain {
             // instantiate a new winsome connection
             var connection = new WinsomeConnection(addr, config.serverPort, config.registryHostnName,
                     config.registryPort, config.netIfName);
+            if ("binary".equals(config.bodyFormat)) {
+                connection.setBodyFormat(BodyFormat.BINARY);
+            }
 
             // create a new command line interface with given connection
             var cli = new CommandLineInterface(connection);
@@ -49,8 +53,7 @@ public class ClientMain {
             throw new NullPointerException();
         }
         try {
-            var mapper = new ObjectMapper();
-            return mapper.readValue(new File(configPath), ClientConfig.class);
+            return JsonCodecs.readerFor(ClientConfig.class).readValue(new File(configPath));
         } catch (IOException e) {
             System.out.println("Unable to read client configuration file");
             e.printStackTrace();
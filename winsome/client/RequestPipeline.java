@@ -0,0 +1,186 @@
+package winsome.client;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import winsome.lib.http.HTTPParsingException;
+import winsome.lib.http.HTTPRequest;
+import winsome.lib.http.HTTPResponse;
+import winsome.lib.http.HTTPResponseReader;
+
+/**
+ * Thread class that implements the request pipeline of a connection to the
+ * server.
+ * The requests are written back to back, without waiting for the responses
+ * to the previous ones, and each one gets a future of its response. Since the
+ * server answers the pipelined requests in the order in which they have been
+ * received, as described in RFC 7230 section 6.3.2, this thread reads the
+ * responses and completes the futures in the same order.
+ *
+ * If the connection fails, or a response is malformed so that the following
+ * ones cannot be delimited anymore, all the pending futures are completed
+ * exceptionally and the pipeline is closed.
+ *
+ * The futures are completed by the threads of a completion pool, never by
+ * this thread, so the stages that depend on them may block, even waiting for
+ * the response to another request of the same pipeline, without stopping the
+ * responses from being read.
+ */
+public class RequestPipeline extends Thread {
+    private Socket socket;
+    // the read end of the socket
+    private HTTPResponseReader input;
+    // the write end of the socket
+    private BufferedOutputStream output;
+
+    // the futures of the requests that have been written and are waiting for
+    // their response, in request order
+    private LinkedBlockingQueue<CompletableFuture<HTTPResponse>> pending = new LinkedBlockingQueue<>();
+    // lock that keeps the order of the pending futures equal to the order in
+    // which the requests are written
+    private final Object writeLock = new Object();
+    // the reason why the pipeline has been closed, null while it is open
+    private Exception closeReason = null;
+    // the threads that complete the futures, and so run their dependent
+    // stages, created when needed
+    private ExecutorService completionPool = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "winsome-request-completion");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Create a new request pipeline on a connected socket
+     *
+     * @param socket the socket
+     * @throws IOException if the socket streams cannot be obtained
+     */
+    public RequestPipeline(Socket socket) throws IOException {
+        if (socket == null) {
+            throw new NullPointerException();
+        }
+        this.socket = socket;
+        // the input is read as bytes so that chunked bodies can be decoded,
+        // the output is written as bytes so that binary bodies can be sent
+        this.input = new HTTPResponseReader(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+        this.setName("winsome-request-pipeline");
+        this.setDaemon(true);
+    }
+
+    /**
+     * Write a request to the server, without waiting for the response.
+     * The write blocks only if the server is not reading the requests fast
+     * enough
+     *
+     * @param request the request
+     * @return the future of the response, completed exceptionally with an
+     *         IOException if the connection fails or with an
+     *         HTTPParsingException if the response is malformed
+     */
+    public CompletableFuture<HTTPResponse> send(HTTPRequest request) {
+        var future = new CompletableFuture<HTTPResponse>();
+        synchronized (this.writeLock) {
+            if (this.closeReason != null) {
+                future.completeExceptionally(this.closeReason);
+                return future;
+            }
+            // the future is queued before the request is written, so that the
+            // reader finds it even if the response arrives immediately
+            this.pending.add(future);
+            try {
+                // write the head, that is US-ASCII, and the body bytes
+                this.output.write(request.getFormattedHead().getBytes(StandardCharsets.US_ASCII));
+                var body = request.getBodyBytes();
+                if (body != null) {
+                    this.output.write(body);
+                }
+                this.output.flush();
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Close the pipeline and the socket. The pending futures are completed
+     * exceptionally
+     */
+    public void close() {
+        close(new IOException("connection closed"));
+    }
+
+    /**
+     * Read the responses and complete the pending futures in request order
+     */
+    public void run() {
+        while (true) {
+            CompletableFuture<HTTPResponse> future;
+            try {
+                future = this.pending.take();
+            } catch (InterruptedException e) {
+                close();
+                return;
+            }
+            // the pipeline has been closed while waiting for a request
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                var response = this.input.readResponse();
+                complete(() -> future.complete(response));
+            } catch (IOException | HTTPParsingException e) {
+                // the following responses cannot be read anymore
+                complete(() -> future.completeExceptionally(e));
+                close(e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Complete a future on a thread of the completion pool. Once the pool has
+     * been shut down, the future is completed by the calling thread
+     *
+     * @param completion the completion of the future
+     */
+    private void complete(Runnable completion) {
+        try {
+            this.completionPool.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private void close(Exception reason) {
+        synchronized (this.writeLock) {
+            if (this.closeReason != null) {
+                return;
+            }
+            this.closeReason = reason;
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                // the socket is being closed anyway
+            }
+            // fail the futures that will never get a response
+            CompletableFuture<HTTPResponse> future;
+            while ((future = this.pending.poll()) != null) {
+                var failed = future;
+                complete(() -> failed.completeExceptionally(reason));
+            }
+            // the completions already submitted are still run
+            this.completionPool.shutdown();
+            // wake up the reader if it is waiting for a request
+            this.pending.add(CompletableFuture.failedFuture(reason));
+        }
+    }
+}
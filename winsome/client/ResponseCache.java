@@ -0,0 +1,59 @@
+package winsome.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import winsome.lib.http.HTTPHeaders;
+import winsome.lib.http.HTTPResponse;
+
+/**
+ * Cache of the responses to the GET requests that carry an entity tag.
+ * The tag of a cached response is sent back with If-None-Match, and if the
+ * server answers NOT MODIFIED the cached response is used instead.
+ * The cache holds at most MAX_ENTRIES responses, evicting the least recently
+ * used one. The responses are cached by the request pipeline thread, so the
+ * cache is synchronized
+ */
+public class ResponseCache {
+    // the maximum number of cached responses
+    private static final int MAX_ENTRIES = 256;
+
+    // the cached responses, by request path, in access order
+    private LinkedHashMap<String, HTTPResponse> responses = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HTTPResponse> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Get the cached response to a path
+     * 
+     * @param path the request path
+     * @return the response, null if it is not cached
+     */
+    public synchronized HTTPResponse get(String path) {
+        return this.responses.get(path);
+    }
+
+    /**
+     * Cache a response, if it has an entity tag
+     * 
+     * @param path     the request path
+     * @param response the response
+     */
+    public synchronized void put(String path, HTTPResponse response) {
+        if (response.getHeader(HTTPHeaders.ETAG) != null) {
+            this.responses.put(path, response);
+        } else {
+            this.responses.remove(path);
+        }
+    }
+
+    /**
+     * Remove all the cached responses, since they depend on the logged user
+     */
+    public synchronized void clear() {
+        this.responses.clear();
+    }
+}
@@ -1,21 +1,16 @@
 package winsome.client;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.nio.charset.StandardCharsets;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import winsome.common.requests.CommentRequest;
 import winsome.common.requests.LoginRequest;
@@ -30,11 +25,14 @@ import winsome.common.responses.UserResponse;
 import winsome.common.responses.WalletResponse;
 import winsome.common.rmi.FollowersCallbackService;
 import winsome.common.rmi.Registration;
+import winsome.lib.http.BodyFormat;
+import winsome.lib.http.HTTPHeaders;
 import winsome.lib.http.HTTPMethod;
 import winsome.lib.http.HTTPParsingException;
 import winsome.lib.http.HTTPRequest;
 import winsome.lib.http.HTTPResponse;
 import winsome.lib.http.HTTPResponseCode;
+import winsome.lib.http.HTTPResponseReader;
 import winsome.lib.utils.Result;
 import winsome.server.database.exceptions.AuthenticationException;
 import winsome.server.database.exceptions.UserAlreadyExistsException;
@@ -49,6 +47,14 @@ import winsome.common.rmi.FollowersCallback;
  * callback objects
  * It is important that the user calls the closeConnection() at the end of the
  * usage
+ *
+ * The REST operations have also an asynchronous variant, that returns the
+ * future of the result as soon as the request has been written: the requests
+ * of several asynchronous calls are pipelined on the connection, and the
+ * responses are read in call order by the request pipeline thread. The
+ * results are completed by other threads, so the stages that depend on them
+ * may also call the synchronous variants.
+ * The synchronous variants wait for the result of the asynchronous ones.
  */
 public class WinsomeConnection {
     /** RMI fields */
@@ -62,15 +68,13 @@ public class WinsomeConnection {
     private FollowersCallback callbackStub;
 
     /** REST connection fields */
-    // the TCP socket
-    private Socket socket;
-    // the read end of the socket
-    private BufferedReader connectionInput;
-    // the write end of the socket
-    private BufferedWriter connectionOutput;
+    // the pipeline of the requests on the TCP connection
+    private RequestPipeline pipeline;
+    // the format of the request and response bodies
+    private BodyFormat bodyFormat = BodyFormat.JSON;
 
-    // global objectmapper
-    private ObjectMapper mapper = new ObjectMapper();
+    // the responses to the GET requests, revalidated with their entity tags
+    private ResponseCache responseCache = new ResponseCache();
 
     /** State fields */
     // the login username
@@ -97,12 +101,9 @@ public class WinsomeConnection {
         if (serverAddress == null) {
             throw new NullPointerException();
         }
-        this.socket = new Socket(serverAddress, serverPort);
-        // the input and output streams are encoded in US_ASCII
-        this.connectionInput = new BufferedReader(
-                new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
-        this.connectionOutput = new BufferedWriter(
-                new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+        // connect to the server and start reading the responses
+        this.pipeline = new RequestPipeline(new Socket(serverAddress, serverPort));
+        this.pipeline.start();
 
         // get the registration handler from registry
         var registry = LocateRegistry.getRegistry(registryAddress, registryPort);
@@ -128,13 +129,12 @@ public class WinsomeConnection {
         }
         // get the multicast informations from server at GET /multicast
         var request = new HTTPRequest(HTTPMethod.GET, "/multicast");
-        sendRequest(request);
         try {
-            var response = getResponse();
+            var response = getResponse(request);
             if (response.getResponseCode() != HTTPResponseCode.OK) {
                 System.out.println("ERROR receiving multicast informations from server");
             } else {
-                var resBody = this.mapper.readValue(response.getBody(), MulticastResponse.class);
+                var resBody = readBody(response, MulticastResponse.class);
 
                 // create a new notification listener and start it
                 this.notificationListener = new RewardsNotificationListener(resBody.multicastAddress, resBody.port,
@@ -146,6 +146,21 @@ public class WinsomeConnection {
         }
     }
 
+    /**
+     * Set the format of the request and response bodies. JSON is the default,
+     * the binary format gives smaller bodies that are cheaper to parse
+     * 
+     * @param bodyFormat the format
+     */
+    public void setBodyFormat(BodyFormat bodyFormat) {
+        if (bodyFormat == null) {
+            throw new NullPointerException();
+        }
+        this.bodyFormat = bodyFormat;
+        // the cached responses are in the previous format
+        this.responseCache.clear();
+    }
+
     /**
      * Close the winsome connection
      * If the user is logged in, then the logout operation is performed
@@ -158,58 +173,169 @@ public class WinsomeConnection {
             this.logout();
         }
         this.notificationListener.interrupt();
-        this.socket.close();
+        this.pipeline.close();
     }
 
     /**
-     * Send an HTTP request to the server
+     * Send an HTTP request to the server, without waiting for the response.
+     * If the server answers that the cached response to the request has not
+     * been modified, the future is completed with the cached response
      * 
-     * @param request
-     * @throws IOException
+     * @param request the request
+     * @return the future of the response
      */
-    private void sendRequest(HTTPRequest request) throws IOException {
-        // get the formatted request
-        var formattedRequest = request.getFormattedMessage();
-        // write on the output end of the socket
-        this.connectionOutput.write(formattedRequest);
-        // flush the output
-        this.connectionOutput.flush();
+    private CompletableFuture<HTTPResponse> exchange(HTTPRequest request) {
+        // accept a compressed body, the response reader decodes it
+        request.setHeader(HTTPHeaders.ACCEPT_ENCODING, HTTPResponseReader.ACCEPTED_ENCODINGS);
+        request.setHeader(HTTPHeaders.ACCEPT, this.bodyFormat.getMediaType());
+        if (request.getMethod() != HTTPMethod.GET) {
+            return this.pipeline.send(request);
+        }
+
+        // revalidate the cached response, if any
+        var path = request.getPath();
+        var cached = this.responseCache.get(path);
+        if (cached != null) {
+            request.setHeader(HTTPHeaders.IF_NONE_MATCH, cached.getHeader(HTTPHeaders.ETAG));
+        }
+        return this.pipeline.send(request).thenApply(response -> {
+            if (response.getResponseCode() == HTTPResponseCode.NOT_MODIFIED && cached != null) {
+                return cached;
+            } else if (response.getResponseCode() == HTTPResponseCode.OK) {
+                this.responseCache.put(path, response);
+            }
+            return response;
+        });
     }
 
     /**
-     * Get an HTTP response from the server
+     * Send an HTTP request to the server and wait for the response
      * 
+     * @param request the request
      * @return the HTTP response
      * @throws IOException
      * @throws HTTPParsingException if an error in HTTP parsing has occurred
      */
-    private HTTPResponse getResponse() throws IOException, HTTPParsingException {
-        var response = new HTTPResponse();
-        // parse the start line
-        response.parseStartLine(this.connectionInput.readLine());
-
-        // read the headers
-        var headers = new ArrayList<String>();
-        var line = this.connectionInput.readLine();
-        while (!line.contentEquals("")) {
-            headers.add(line);
-            line = this.connectionInput.readLine();
+    private HTTPResponse getResponse(HTTPRequest request) throws IOException, HTTPParsingException {
+        try {
+            return exchange(request).join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof HTTPParsingException) {
+                throw (HTTPParsingException) cause;
+            }
+            throw asIOException(e);
+        }
+    }
+
+    /**
+     * Send an HTTP request to the server, and turn its response into a result
+     * once it is received
+     * 
+     * @param request the request
+     * @param body    the request body object, null if the request has no
+     *                body
+     * @param handler the handler of the response
+     * @return the future of the result
+     */
+    private CompletableFuture<Result<String, String>> call(HTTPRequest request, Object body,
+            ResponseHandler handler) {
+        if (body != null) {
+            try {
+                setRequestBody(request, body);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        authRequest(request);
+        return exchange(request).handle((response, error) -> {
+            if (error != null) {
+                var cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof HTTPParsingException) {
+                    return Result.err("bad HTTP response");
+                }
+                throw new CompletionException(cause);
+            }
+            try {
+                return handler.handle(response);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Send an HTTP request without a body to the server, and turn its
+     * response into a result once it is received
+     * 
+     * @param request the request
+     * @param handler the handler of the response
+     * @return the future of the result
+     */
+    private CompletableFuture<Result<String, String>> call(HTTPRequest request, ResponseHandler handler) {
+        return call(request, null, handler);
+    }
+
+    /**
+     * Wait for the result of an asynchronous call
+     * 
+     * @param result the future of the result
+     * @return the result
+     * @throws IOException if the call has failed
+     */
+    private static Result<String, String> await(CompletableFuture<Result<String, String>> result)
+            throws IOException {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            throw asIOException(e);
         }
+    }
 
-        // parse the headers
-        var headersArr = new String[headers.size()];
-        headersArr = headers.toArray(headersArr);
-        response.parseHeaders(headersArr);
-
-        // if the contentLength header is prensent, then parse the body
-        var contentLength = response.getHeaders().get("Content-Length");
-        if (contentLength != null) {
-            var bytesToRead = Integer.parseInt(contentLength);
-            var buf = new char[bytesToRead];
-            this.connectionInput.read(buf);
-            response.parseBody(new String(buf));
+    private static IOException asIOException(CompletionException e) {
+        var cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
         }
-        return response;
+        return new IOException(cause);
+    }
+
+    /**
+     * Handler that turns a response into the result of a call
+     */
+    @FunctionalInterface
+    private interface ResponseHandler {
+        public Result<String, String> handle(HTTPResponse response) throws IOException;
+    }
+
+    /**
+     * Set the body of a request, serialized in the format of the connection
+     * 
+     * @param request the request
+     * @param body    the request body object
+     * @return the modified request
+     * @throws IOException if the body cannot be serialized
+     */
+    private HTTPRequest setRequestBody(HTTPRequest request, Object body) throws IOException {
+        return request.setHeader(HTTPHeaders.CONTENT_TYPE, this.bodyFormat.getMediaType())
+                .setBody(this.bodyFormat.encode(body));
+    }
+
+    /**
+     * Deserialize the body of a response, in the format declared by its
+     * Content-Type header
+     * 
+     * @param <T>      the type of the body
+     * @param response the response
+     * @param type     the class of the body
+     * @return the body object
+     * @throws IOException if the body is malformed
+     */
+    private <T> T readBody(HTTPResponse response, Class<T> type) throws IOException {
+        var format = BodyFormat.fromContentType(response.getHeader(HTTPHeaders.CONTENT_TYPE));
+        return format.decode(response.getBodyBytes(), type);
     }
 
     /**
@@ -221,7 +347,7 @@ public class WinsomeConnection {
      */
     private void authRequest(HTTPRequest request) {
         if (this.username != null && this.authToken != null) {
-            request.setHeader("Authorization", "Basic " + this.username + ":" + this.authToken);
+            request.setHeader(HTTPHeaders.AUTHORIZATION, "Basic " + this.username + ":" + this.authToken);
         }
     }
 
@@ -237,8 +363,8 @@ public class WinsomeConnection {
     private Result<String, String> getErrorMessage(HTTPResponse response)
             throws IOException {
         var outStr = response.getResponseCode().toString();
-        if (response.getBody() != null) {
-            var errBody = this.mapper.readValue(response.getBody(), ErrorResponse.class);
+        if (response.getBodyBytes() != null) {
+            var errBody = readBody(response, ErrorResponse.class);
             outStr += " " + errBody.reason;
         }
         return Result.err(outStr);
@@ -290,14 +416,12 @@ public class WinsomeConnection {
             reqBody.password = password;
 
             // send the request
-            var request = new HTTPRequest(HTTPMethod.POST, "/login")
-                    .setBody(this.mapper.writeValueAsString(reqBody));
-            sendRequest(request);
+            var request = setRequestBody(new HTTPRequest(HTTPMethod.POST, "/login"), reqBody);
 
             // get the response
             HTTPResponse response;
             try {
-                response = getResponse();
+                response = getResponse(request);
             } catch (HTTPParsingException e) {
                 return Result.err("bad HTTP response");
             }
@@ -307,11 +431,12 @@ public class WinsomeConnection {
             }
 
             // try to deserializa the response body
-            var resBody = this.mapper.readValue(response.getBody(), LoginResponse.class);
+            var resBody = readBody(response, LoginResponse.class);
 
             // set authentication credentials
             this.authToken = resBody.authToken;
             this.username = username;
+            this.responseCache.clear();
 
             // set up RMI callback for followers
             try {
@@ -362,12 +487,11 @@ public class WinsomeConnection {
         // send a logout request
         var request = new HTTPRequest(HTTPMethod.DELETE, "/login");
         authRequest(request);
-        sendRequest(request);
 
         // get the logout response
         HTTPResponse response;
         try {
-            response = getResponse();
+            response = getResponse(request);
         } catch (HTTPParsingException e) {
             return Result.err("bad HTTP response");
         }
@@ -377,9 +501,10 @@ public class WinsomeConnection {
 
         // if the response is OK, then the user successfully logged out
 
-        // clear the auth fields
+        // clear the auth fields and the responses of the user
         this.username = null;
         this.authToken = null;
+        this.responseCache.clear();
         return Result.ok("logged out");
     }
 
@@ -391,22 +516,25 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> listUsers() throws IOException {
+        return await(listUsersAsync());
+    }
+
+    /**
+     * Asynchronous variant of listUsers()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> listUsersAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/users");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserializa a UserResponse array from the body
-        var resBody = this.mapper.readValue(response.getBody(), UserResponse[].class);
-        // return the rendered result of the deserialized users
-        return Result.ok(PresentationUtils.renderUsernames(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserializa a UserResponse array from the body
+            var resBody = readBody(response, UserResponse[].class);
+            // return the rendered result of the deserialized users
+            return Result.ok(PresentationUtils.renderUsernames(resBody));
+        });
     }
 
     /**
@@ -417,20 +545,24 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> followUser(String toFollowUsername) throws IOException {
+        return await(followUserAsync(toFollowUsername));
+    }
+
+    /**
+     * Asynchronous variant of followUser()
+     * 
+     * @param toFollowUsername
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> followUserAsync(String toFollowUsername) {
         var request = new HTTPRequest(HTTPMethod.PUT, "/followers/" + toFollowUsername);
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // if the response code is OK then follow operation is successful
-        return Result.ok("user " + toFollowUsername + " followed");
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // if the response code is OK then follow operation is successful
+            return Result.ok("user " + toFollowUsername + " followed");
+        });
     }
 
     /**
@@ -441,20 +573,24 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> unfollowUser(String toUnfollowUsername) throws IOException {
+        return await(unfollowUserAsync(toUnfollowUsername));
+    }
+
+    /**
+     * Asynchronous variant of unfollowUser()
+     * 
+     * @param toUnfollowUsername
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> unfollowUserAsync(String toUnfollowUsername) {
         var request = new HTTPRequest(HTTPMethod.DELETE, "/followers/" + toUnfollowUsername);
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // if the response code is OK then unfollow operation is successful
-        return Result.ok("user " + toUnfollowUsername + " unfollowed");
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // if the response code is OK then unfollow operation is successful
+            return Result.ok("user " + toUnfollowUsername + " unfollowed");
+        });
     }
 
     /**
@@ -464,22 +600,25 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> listFollowing() throws IOException {
+        return await(listFollowingAsync());
+    }
+
+    /**
+     * Asynchronous variant of listFollowing()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> listFollowingAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/following");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body as a UserResponse array
-        var resBody = this.mapper.readValue(response.getBody(), UserResponse[].class);
-        // return the rendered user list
-        return Result.ok(PresentationUtils.renderUsernames(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body as a UserResponse array
+            var resBody = readBody(response, UserResponse[].class);
+            // return the rendered user list
+            return Result.ok(PresentationUtils.renderUsernames(resBody));
+        });
     }
 
     /**
@@ -509,6 +648,17 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> createPost(String title, String content) throws IOException {
+        return await(createPostAsync(title, content));
+    }
+
+    /**
+     * Asynchronous variant of createPost()
+     * 
+     * @param title   the title of the post
+     * @param content the content of the post
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> createPostAsync(String title, String content) {
         if (title == null || content == null) {
             throw new NullPointerException();
         }
@@ -519,23 +669,16 @@ public class WinsomeConnection {
         reqBody.content = content;
 
         // send the request
-        var request = new HTTPRequest(HTTPMethod.POST, "/posts")
-                .setBody(this.mapper.writeValueAsString(reqBody));
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.CREATED) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the body of the response
-        var resBody = this.mapper.readValue(response.getBody(), PostIdResponse.class);
-        // return the formatted post Id
-        return Result.ok("post created, id:" + Integer.toString(resBody.postId));
+        var request = new HTTPRequest(HTTPMethod.POST, "/posts");
+        return call(request, reqBody, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.CREATED) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the body of the response
+            var resBody = readBody(response, PostIdResponse.class);
+            // return the formatted post Id
+            return Result.ok("post created, id:" + Integer.toString(resBody.postId));
+        });
     }
 
     /**
@@ -546,22 +689,26 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> getPost(int idPost) throws IOException {
+        return await(getPostAsync(idPost));
+    }
+
+    /**
+     * Asynchronous variant of getPost()
+     * 
+     * @param idPost the post id
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> getPostAsync(int idPost) {
         var request = new HTTPRequest(HTTPMethod.GET, "/posts/" + Integer.toString(idPost));
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body
-        var resBody = this.mapper.readValue(response.getBody(), PostResponse.class);
-        // return the rendered post
-        return Result.ok(PresentationUtils.renderPost(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body
+            var resBody = readBody(response, PostResponse.class);
+            // return the rendered post
+            return Result.ok(PresentationUtils.renderPost(resBody));
+        });
     }
 
     /**
@@ -572,19 +719,23 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> rewinPost(int postId) throws IOException {
+        return await(rewinPostAsync(postId));
+    }
+
+    /**
+     * Asynchronous variant of rewinPost()
+     * 
+     * @param postId the post to be rewinned
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> rewinPostAsync(int postId) {
         var request = new HTTPRequest(HTTPMethod.POST, "/posts/" + Integer.toString(postId) + "/rewins");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        return Result.ok("post rewinned");
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            return Result.ok("post rewinned");
+        });
     }
 
     /**
@@ -598,6 +749,18 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> ratePost(int postId, int rate) throws IOException {
+        return await(ratePostAsync(postId, rate));
+    }
+
+    /**
+     * Asynchronous variant of ratePost()
+     * 
+     * @param postId the post id to rate
+     * @param rate   1 or -1
+     * @return the future of the result
+     * @throws IllegalArgumentException if rate is not 1 nor -1
+     */
+    public CompletableFuture<Result<String, String>> ratePostAsync(int postId, int rate) {
         if (rate != 1 && rate != -1) {
             throw new IllegalArgumentException();
         }
@@ -607,22 +770,13 @@ public class WinsomeConnection {
         reqBody.rate = rate;
 
         // send the request
-        var request = new HTTPRequest(HTTPMethod.POST, "/posts/" + Integer.toString(postId) + "/rates")
-                .setBody(this.mapper.writeValueAsString(reqBody));
-        authRequest(request);
-        sendRequest(request);
-
-        // get the response
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        return Result.ok("post rated");
+        var request = new HTTPRequest(HTTPMethod.POST, "/posts/" + Integer.toString(postId) + "/rates");
+        return call(request, reqBody, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            return Result.ok("post rated");
+        });
     }
 
     /**
@@ -634,27 +788,29 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> addComment(int postId, String content) throws IOException {
+        return await(addCommentAsync(postId, content));
+    }
+
+    /**
+     * Asynchronous variant of addComment()
+     * 
+     * @param postId  the post to add the comment
+     * @param content the comment content
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> addCommentAsync(int postId, String content) {
         // prepare the request body
         var reqBody = new CommentRequest();
         reqBody.content = content;
 
         // send the request
-        var request = new HTTPRequest(HTTPMethod.POST, "/posts/" + Integer.toString(postId) + "/comments")
-                .setBody(this.mapper.writeValueAsString(reqBody));
-        authRequest(request);
-        sendRequest(request);
-
-        // get the response
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.CREATED) {
-            return getErrorMessage(response);
-        }
-        return Result.ok("post commented");
+        var request = new HTTPRequest(HTTPMethod.POST, "/posts/" + Integer.toString(postId) + "/comments");
+        return call(request, reqBody, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.CREATED) {
+                return getErrorMessage(response);
+            }
+            return Result.ok("post commented");
+        });
     }
 
     /**
@@ -664,22 +820,25 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> viewBlog() throws IOException {
+        return await(viewBlogAsync());
+    }
+
+    /**
+     * Asynchronous variant of viewBlog()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> viewBlogAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/posts");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body
-        var resBody = this.mapper.readValue(response.getBody(), PostResponse[].class);
-        // return the rendered post list
-        return Result.ok(PresentationUtils.renderPostFeed(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body
+            var resBody = readBody(response, PostResponse[].class);
+            // return the rendered post list
+            return Result.ok(PresentationUtils.renderPostFeed(resBody));
+        });
     }
 
     /**
@@ -689,22 +848,25 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> viewFeed() throws IOException {
+        return await(viewFeedAsync());
+    }
+
+    /**
+     * Asynchronous variant of viewFeed()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> viewFeedAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/feed");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body
-        var resBody = this.mapper.readValue(response.getBody(), PostResponse[].class);
-        // return the rendered post list
-        return Result.ok(PresentationUtils.renderPostFeed(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body
+            var resBody = readBody(response, PostResponse[].class);
+            // return the rendered post list
+            return Result.ok(PresentationUtils.renderPostFeed(resBody));
+        });
     }
 
     /**
@@ -715,19 +877,23 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> deletePost(int postId) throws IOException {
+        return await(deletePostAsync(postId));
+    }
+
+    /**
+     * Asynchronous variant of deletePost()
+     * 
+     * @param postId the post to be deleted
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> deletePostAsync(int postId) {
         var request = new HTTPRequest(HTTPMethod.DELETE, "/posts/" + Integer.toString(postId));
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        return Result.ok("post deleted");
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            return Result.ok("post deleted");
+        });
     }
 
     /**
@@ -737,22 +903,25 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> getWallet() throws IOException {
+        return await(getWalletAsync());
+    }
+
+    /**
+     * Asynchronous variant of getWallet()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> getWalletAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/wallet");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body
-        var resBody = this.mapper.readValue(response.getBody(), WalletResponse.class);
-        // return the rendered wallet
-        return Result.ok(PresentationUtils.renderWallet(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body
+            var resBody = readBody(response, WalletResponse.class);
+            // return the rendered wallet
+            return Result.ok(PresentationUtils.renderWallet(resBody));
+        });
     }
 
     /**
@@ -762,21 +931,24 @@ public class WinsomeConnection {
      * @throws IOException
      */
     public Result<String, String> getWalletInBtc() throws IOException {
+        return await(getWalletInBtcAsync());
+    }
+
+    /**
+     * Asynchronous variant of getWalletInBtc()
+     * 
+     * @return the future of the result
+     */
+    public CompletableFuture<Result<String, String>> getWalletInBtcAsync() {
         var request = new HTTPRequest(HTTPMethod.GET, "/wallet/btc");
-        authRequest(request);
-        sendRequest(request);
-        HTTPResponse response;
-        try {
-            response = getResponse();
-        } catch (HTTPParsingException e) {
-            return Result.err("bad HTTP response");
-        }
-        if (response.getResponseCode() != HTTPResponseCode.OK) {
-            return getErrorMessage(response);
-        }
-        // try to deserialize the response body
-        var resBody = this.mapper.readValue(response.getBody(), WalletResponse.class);
-        // return the rendered wallet
-        return Result.ok(PresentationUtils.renderWallet(resBody));
+        return call(request, response -> {
+            if (response.getResponseCode() != HTTPResponseCode.OK) {
+                return getErrorMessage(response);
+            }
+            // try to deserialize the response body
+            var resBody = readBody(response, WalletResponse.class);
+            // return the rendered wallet
+            return Result.ok(PresentationUtils.renderWallet(resBody));
+        });
     }
 }
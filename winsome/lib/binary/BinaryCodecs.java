@@ -0,0 +1,212 @@
+package winsome.lib.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the codecs of the compact binary body format, that is an
+ * alternative to JSON for the request and response models.
+ * 
+ * A body starts with the format version, followed by the value:
+ * - int and long are zigzag variable length integers, double is 8 bytes,
+ * boolean is a byte, String is a length prefixed UTF-8 string
+ * - an object is a byte, 0 for null and 1 otherwise, followed by its fields
+ * - an array or a collection is a byte, 0 for null and 1 otherwise, followed
+ * by each element preceded by the byte 1, and terminated by the byte 0, so
+ * that it can be written without knowing the number of elements in advance
+ * 
+ * The codec of a class is built once, the first time the class is used.
+ */
+public class BinaryCodecs {
+    // the version of the format, written at the start of every body
+    public static final int FORMAT_VERSION = 1;
+
+    private static final ConcurrentHashMap<Class<?>, ClassCodec> codecs = new ConcurrentHashMap<>();
+
+    private BinaryCodecs() {
+    }
+
+    /**
+     * Write a value as a whole body
+     * 
+     * @param out   the stream of the body
+     * @param value the value, an object, an array or a collection
+     * @throws IOException if the stream fails
+     */
+    public static void write(OutputStream out, Object value) throws IOException {
+        var writer = new BinaryWriter(out);
+        writer.writeByte(FORMAT_VERSION);
+        writeValue(writer, value == null ? Object.class : value.getClass(), value);
+        writer.flush();
+    }
+
+    /**
+     * Read a value from a whole body
+     * 
+     * @param <T>   the type of the value
+     * @param bytes the body
+     * @param type  the class of the value, an object or an array class
+     * @return the value
+     * @throws BinaryFormatException if the body is malformed
+     */
+    public static <T> T read(byte[] bytes, Class<T> type) throws BinaryFormatException {
+        var reader = new BinaryReader(bytes);
+        if (reader.readByte() != FORMAT_VERSION) {
+            throw new BinaryFormatException("unsupported format version");
+        }
+        var value = type.cast(readValue(reader, type));
+        if (!reader.isAtEnd()) {
+            throw new BinaryFormatException("trailing bytes after the body");
+        }
+        return value;
+    }
+
+    /**
+     * Create a writer that writes an array body one element at a time
+     * 
+     * @param out the stream of the body
+     * @return the array writer
+     * @throws IOException if the stream fails
+     */
+    public static ArrayWriter arrayWriter(OutputStream out) throws IOException {
+        return new ArrayWriter(out);
+    }
+
+    /**
+     * Writer of an array body whose elements are produced one at a time
+     */
+    public static class ArrayWriter {
+        private BinaryWriter writer;
+
+        private ArrayWriter(OutputStream out) throws IOException {
+            this.writer = new BinaryWriter(out);
+            this.writer.writeByte(FORMAT_VERSION);
+            this.writer.writeByte(1);
+        }
+
+        /**
+         * Write an element of the array
+         * 
+         * @param element the element
+         * @throws IOException if the stream fails
+         */
+        public void write(Object element) throws IOException {
+            this.writer.writeByte(1);
+            writeValue(this.writer, element == null ? Object.class : element.getClass(), element);
+        }
+
+        /**
+         * Terminate the array and write the staged bytes to the stream
+         * 
+         * @throws IOException if the stream fails
+         */
+        public void finish() throws IOException {
+            this.writer.writeByte(0);
+            this.writer.flush();
+        }
+    }
+
+    static void writeValue(BinaryWriter writer, Class<?> type, Object value) throws IOException {
+        if (type == int.class || type == Integer.class) {
+            writer.writeInt((Integer) value);
+        } else if (type == long.class || type == Long.class) {
+            writer.writeLong((Long) value);
+        } else if (type == double.class || type == Double.class) {
+            writer.writeDouble((Double) value);
+        } else if (type == boolean.class || type == Boolean.class) {
+            writer.writeBoolean((Boolean) value);
+        } else if (type == String.class) {
+            writer.writeString((String) value);
+        } else if (value == null) {
+            writer.writeByte(0);
+        } else if (type.isArray()) {
+            writer.writeByte(1);
+            var componentType = type.getComponentType();
+            var length = Array.getLength(value);
+            for (int i = 0; i < length; ++i) {
+                writer.writeByte(1);
+                writeValue(writer, componentType, Array.get(value, i));
+            }
+            writer.writeByte(0);
+        } else if (value instanceof Collection) {
+            // the elements are written with their own class, that has to
+            // match the component type of the array they are read into
+            writer.writeByte(1);
+            for (var element : (Collection<?>) value) {
+                writer.writeByte(1);
+                writeValue(writer, element == null ? Object.class : element.getClass(), element);
+            }
+            writer.writeByte(0);
+        } else {
+            writer.writeByte(1);
+            codecFor(value.getClass()).writeFields(writer, value);
+        }
+    }
+
+    static Object readValue(BinaryReader reader, Class<?> type) throws BinaryFormatException {
+        if (type == int.class || type == Integer.class) {
+            return reader.readInt();
+        } else if (type == long.class || type == Long.class) {
+            return reader.readLong();
+        } else if (type == double.class || type == Double.class) {
+            return reader.readDouble();
+        } else if (type == boolean.class || type == Boolean.class) {
+            return reader.readBoolean();
+        } else if (type == String.class) {
+            return reader.readString();
+        }
+
+        var marker = reader.readByte();
+        if (marker == 0) {
+            return null;
+        } else if (marker != 1) {
+            throw new BinaryFormatException("invalid marker " + marker);
+        }
+        if (type.isArray()) {
+            var componentType = type.getComponentType();
+            var elements = new ArrayList<Object>();
+            for (var next = reader.readByte(); next != 0; next = reader.readByte()) {
+                if (next != 1) {
+                    throw new BinaryFormatException("invalid marker " + next);
+                }
+                elements.add(readValue(reader, componentType));
+            }
+            var array = Array.newInstance(componentType, elements.size());
+            for (int i = 0; i < elements.size(); ++i) {
+                Array.set(array, i, elements.get(i));
+            }
+            return array;
+        }
+        return codecFor(type).readFields(reader);
+    }
+
+    static void checkSupported(Class<?> type) {
+        if (type.isArray()) {
+            checkSupported(type.getComponentType());
+        } else if (type.isPrimitive() && type != int.class && type != long.class && type != double.class
+                && type != boolean.class) {
+            throw new IllegalArgumentException("unsupported type " + type.getName());
+        } else if (Collection.class.isAssignableFrom(type)) {
+            // the element type of a collection field is not known
+            throw new IllegalArgumentException("unsupported collection field of type " + type.getName());
+        }
+    }
+
+    private static ClassCodec codecFor(Class<?> type) {
+        var codec = codecs.get(type);
+        if (codec == null) {
+            // NOTE: computeIfAbsent is not used since building a codec can
+            // build the codecs of the field classes
+            codec = new ClassCodec(type);
+            var previous = codecs.putIfAbsent(type, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+        return codec;
+    }
+}
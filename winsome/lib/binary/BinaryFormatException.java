@@ -0,0 +1,12 @@
+package winsome.lib.binary;
+
+import java.io.IOException;
+
+/**
+ * Exception indicating that a binary body is truncated or malformed
+ */
+public class BinaryFormatException extends IOException {
+    public BinaryFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,85 @@
+package winsome.lib.binary;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the primitive values written by a BinaryWriter, from a body that
+ * has been completely received
+ */
+public class BinaryReader {
+    private byte[] bytes;
+    private int position = 0;
+
+    public BinaryReader(byte[] bytes) {
+        if (bytes == null) {
+            throw new NullPointerException();
+        }
+        this.bytes = bytes;
+    }
+
+    public int readByte() throws BinaryFormatException {
+        if (this.position >= this.bytes.length) {
+            throw new BinaryFormatException("unexpected end of body");
+        }
+        return this.bytes[this.position++] & 0xff;
+    }
+
+    public boolean readBoolean() throws BinaryFormatException {
+        return readByte() != 0;
+    }
+
+    public int readInt() throws BinaryFormatException {
+        var value = readVarLong();
+        if (value >>> 32 != 0) {
+            throw new BinaryFormatException("integer out of range");
+        }
+        return (int) (value >>> 1) ^ -(int) (value & 1);
+    }
+
+    public long readLong() throws BinaryFormatException {
+        var value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public double readDouble() throws BinaryFormatException {
+        long bits = 0;
+        for (int i = 0; i < 8; ++i) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    public String readString() throws BinaryFormatException {
+        var length = readVarLong();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        // a length that does not fit an int is negative once read as a long
+        if (length < 0 || length > this.bytes.length - this.position) {
+            throw new BinaryFormatException("invalid string length");
+        }
+        var value = new String(this.bytes, this.position, (int) length, StandardCharsets.UTF_8);
+        this.position += (int) length;
+        return value;
+    }
+
+    /**
+     * @return true if the whole body has been read
+     */
+    public boolean isAtEnd() {
+        return this.position == this.bytes.length;
+    }
+
+    private long readVarLong() throws BinaryFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            var b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BinaryFormatException("variable length integer too long");
+    }
+}
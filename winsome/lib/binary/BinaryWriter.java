@@ -0,0 +1,114 @@
+package winsome.lib.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writer of the primitive values of the binary body format. The values are
+ * staged in a small buffer and written to the output stream when it is full
+ * or when the writer is flushed.
+ * 
+ * The integers are written as zigzag variable length integers, so that small
+ * values take a single byte, the doubles as 8 big endian bytes and the strings
+ * as their UTF-8 length plus one, followed by the UTF-8 bytes. The length
+ * zero is used for null.
+ */
+public class BinaryWriter {
+    private static final int STAGING_SIZE = 1024;
+
+    private OutputStream out;
+    private byte[] staging = new byte[STAGING_SIZE];
+    private int position = 0;
+
+    public BinaryWriter(OutputStream out) {
+        if (out == null) {
+            throw new NullPointerException();
+        }
+        this.out = out;
+    }
+
+    public void writeByte(int value) throws IOException {
+        if (this.position == this.staging.length) {
+            flush();
+        }
+        this.staging[this.position++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt(int value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 31));
+    }
+
+    public void writeLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeDouble(double value) throws IOException {
+        var bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (bits >>> shift));
+        }
+    }
+
+    public void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        var length = value.length();
+        if (length <= this.staging.length - this.position - 5 && isAscii(value)) {
+            // an ASCII string is its own UTF-8 encoding, so it is copied
+            // straight into the staging buffer
+            writeVarLong(length + 1L);
+            for (int i = 0; i < length; ++i) {
+                this.staging[this.position++] = (byte) value.charAt(i);
+            }
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(bytes.length + 1L);
+        if (bytes.length > this.staging.length - this.position) {
+            // a long string is written directly to the stream
+            flush();
+            this.out.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, this.staging, this.position, bytes.length);
+            this.position += bytes.length;
+        }
+    }
+
+    /**
+     * Write the staged bytes to the output stream. The output stream itself is
+     * not flushed
+     * 
+     * @throws IOException if the stream fails
+     */
+    public void flush() throws IOException {
+        if (this.position > 0) {
+            this.out.write(this.staging, 0, this.position);
+            this.position = 0;
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        // 7 bits at a time, the high bit tells that more bytes follow
+        while ((value & ~0x7fL) != 0) {
+            writeByte((int) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
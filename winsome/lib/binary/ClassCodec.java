@@ -0,0 +1,96 @@
+package winsome.lib.binary;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The codec of a model class, built once from its public fields. The fields
+ * are encoded one after the other, sorted by name so that the order does not
+ * depend on the reflection order, without any name or tag: the client and the
+ * server share the model classes, so they agree on the layout.
+ */
+class ClassCodec {
+    private Class<?> type;
+    private Constructor<?> constructor;
+    private Field[] fields;
+
+    ClassCodec(Class<?> type) {
+        this.type = type;
+        try {
+            this.constructor = type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no public no-argument constructor");
+        }
+        this.fields = Arrays.stream(type.getFields())
+                .filter(f -> !Modifier.isStatic(f.getModifiers()) && !Modifier.isFinal(f.getModifiers()))
+                .sorted(Comparator.comparing(Field::getName))
+                .toArray(Field[]::new);
+        for (var field : this.fields) {
+            BinaryCodecs.checkSupported(field.getType());
+        }
+    }
+
+    /**
+     * Write the fields of a value
+     * 
+     * @param writer the writer
+     * @param value  the value, not null
+     * @throws IOException if the writer fails
+     */
+    void writeFields(BinaryWriter writer, Object value) throws IOException {
+        try {
+            for (var field : this.fields) {
+                var fieldType = field.getType();
+                if (fieldType == int.class) {
+                    writer.writeInt(field.getInt(value));
+                } else if (fieldType == long.class) {
+                    writer.writeLong(field.getLong(value));
+                } else if (fieldType == double.class) {
+                    writer.writeDouble(field.getDouble(value));
+                } else if (fieldType == boolean.class) {
+                    writer.writeBoolean(field.getBoolean(value));
+                } else {
+                    BinaryCodecs.writeValue(writer, fieldType, field.get(value));
+                }
+            }
+        } catch (IllegalAccessException e) {
+            // the fields are public
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Read the fields of a value into a new instance of the class
+     * 
+     * @param reader the reader
+     * @return the new instance
+     * @throws BinaryFormatException if the body is malformed
+     */
+    Object readFields(BinaryReader reader) throws BinaryFormatException {
+        try {
+            var value = this.constructor.newInstance();
+            for (var field : this.fields) {
+                var fieldType = field.getType();
+                if (fieldType == int.class) {
+                    field.setInt(value, reader.readInt());
+                } else if (fieldType == long.class) {
+                    field.setLong(value, reader.readLong());
+                } else if (fieldType == double.class) {
+                    field.setDouble(value, reader.readDouble());
+                } else if (fieldType == boolean.class) {
+                    field.setBoolean(value, reader.readBoolean());
+                } else {
+                    field.set(value, BinaryCodecs.readValue(reader, fieldType));
+                }
+            }
+            return value;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("cannot instantiate " + this.type.getName(), e);
+        }
+    }
+}
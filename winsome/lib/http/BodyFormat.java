@@ -0,0 +1,207 @@
+package winsome.lib.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import winsome.lib.binary.BinaryCodecs;
+import winsome.lib.json.JsonCodecs;
+
+/**
+ * The formats of the request and response bodies. JSON is the default, the
+ * compact binary format is used only when the client asks for it, with the
+ * Content-Type header for a request body and the Accept header for a
+ * response body
+ */
+public enum BodyFormat {
+    JSON("application/json"),
+    BINARY("application/x-winsome-binary");
+
+    private final String mediaType;
+
+    private BodyFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the media type of the format, as it appears in the Content-Type
+     *         and Accept headers
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Get the format of a body from its Content-Type header
+     * 
+     * @param contentType the value of the Content-Type header, can be null
+     * @return the format, JSON if the header is missing or unknown
+     */
+    public static BodyFormat fromContentType(String contentType) {
+        if (contentType != null && mediaTypeOf(contentType).equalsIgnoreCase(BINARY.mediaType)) {
+            return BINARY;
+        }
+        return JSON;
+    }
+
+    /**
+     * Choose the format of a response body from the Accept header of the
+     * request. The binary format is chosen only if it is explicitly accepted
+     * with a quality higher than JSON
+     * 
+     * @param accept the value of the Accept header, can be null
+     * @return the chosen format
+     */
+    public static BodyFormat negotiate(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+
+        float binaryQuality = 0;
+        float jsonQuality = 0;
+        for (var element : accept.split(",")) {
+            // an element is a media range followed by optional parameters
+            var parts = element.split(";");
+            var mediaRange = parts[0].trim();
+            var quality = 1.0f;
+            for (int i = 1; i < parts.length; ++i) {
+                var param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (mediaRange.equalsIgnoreCase(BINARY.mediaType)) {
+                binaryQuality = quality;
+            } else if (mediaRange.equalsIgnoreCase(JSON.mediaType) || mediaRange.equals("*/*")
+                    || mediaRange.equalsIgnoreCase("application/*")) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            }
+        }
+        return binaryQuality > 0 && binaryQuality > jsonQuality ? BINARY : JSON;
+    }
+
+    /**
+     * Write a value as a whole body
+     * 
+     * @param out   the stream of the body
+     * @param value the value
+     * @throws IOException if the value cannot be serialized or the stream
+     *                     fails
+     */
+    public void write(OutputStream out, Object value) throws IOException {
+        if (this == BINARY) {
+            BinaryCodecs.write(out, value);
+        } else {
+            JsonCodecs.writerFor(value.getClass()).writeValue(out, value);
+        }
+    }
+
+    /**
+     * Encode a value as a whole body
+     * 
+     * @param value the value
+     * @return the bytes of the body
+     * @throws IOException if the value cannot be serialized
+     */
+    public byte[] encode(Object value) throws IOException {
+        var out = new ByteArrayOutputStream();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a value from a whole body
+     * 
+     * @param <T>   the type of the value
+     * @param bytes the bytes of the body
+     * @param type  the class of the value
+     * @return the value
+     * @throws IOException if the body is malformed, in which case the
+     *                     exception is a JsonProcessingException or a
+     *                     BinaryFormatException
+     */
+    public <T> T decode(byte[] bytes, Class<T> type) throws IOException {
+        if (bytes == null) {
+            throw new NullPointerException();
+        }
+        if (this == BINARY) {
+            return BinaryCodecs.read(bytes, type);
+        }
+        return JsonCodecs.readerFor(type).readValue(bytes);
+    }
+
+    /**
+     * Create a writer that writes an array body one element at a time, so
+     * that the whole array never has to be held in memory
+     * 
+     * @param out the stream of the body
+     * @return the array writer
+     * @throws IOException if the stream fails
+     */
+    public ArrayWriter arrayWriter(OutputStream out) throws IOException {
+        if (this == BINARY) {
+            var writer = BinaryCodecs.arrayWriter(out);
+            return new ArrayWriter() {
+                @Override
+                public void write(Object element) throws IOException {
+                    writer.write(element);
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    writer.finish();
+                }
+            };
+        }
+
+        // the generator must not close the stream, that is closed by the
+        // caller once the whole body has been written
+        var generator = JsonCodecs.factory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartArray();
+        return new ArrayWriter() {
+            @Override
+            public void write(Object element) throws IOException {
+                JsonCodecs.writerFor(element.getClass()).writeValue(generator, element);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                generator.writeEndArray();
+                generator.close();
+            }
+        };
+    }
+
+    /**
+     * Writer of an array body whose elements are produced one at a time
+     */
+    public interface ArrayWriter {
+        /**
+         * Write an element of the array
+         * 
+         * @param element the element, not null
+         * @throws IOException if the element cannot be serialized or the
+         *                     stream fails
+         */
+        public void write(Object element) throws IOException;
+
+        /**
+         * Terminate the array and write any buffered bytes to the stream
+         * 
+         * @throws IOException if the stream fails
+         */
+        public void finish() throws IOException;
+    }
+
+    private static String mediaTypeOf(String contentType) {
+        var semicolon = contentType.indexOf(';');
+        return (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim();
+    }
+}
@@ -0,0 +1,174 @@
+package winsome.lib.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import winsome.lib.nio.BufferPool;
+
+/**
+ * Output stream that frames the written bytes with the chunked transfer
+ * coding, as described in RFC 7230 section 4.1. Each chunk is written into a
+ * buffer leased from a buffer pool, with some room reserved before the data
+ * for the chunk size line, and it is handed to a sink as soon as it is full.
+ * 
+ * flush does not send anything, so that many small writes do not result in
+ * many small chunks: the last chunk is sent by finish.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    /**
+     * The receiver of the framed chunks
+     */
+    @FunctionalInterface
+    public interface ChunkSink {
+        /**
+         * Send a framed chunk. The sink becomes the owner of the buffer, even
+         * if it throws
+         * 
+         * @param chunk the buffer that holds the chunk, ready to be read
+         * @param last  true if the chunk terminates the body
+         * @throws IOException if the chunk cannot be sent
+         */
+        public void send(ByteBuffer chunk, boolean last) throws IOException;
+    }
+
+    // room reserved before the data, for up to 8 hex digits and the CRLF
+    private static final int HEADER_ROOM = 10;
+    // room reserved after the data, for the CRLF and the last chunk
+    private static final byte[] TRAILER = "\r\n".getBytes();
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes();
+    private static final int TRAILER_ROOM = 2 + 5;
+
+    // the pool of the chunk buffers
+    private BufferPool pool;
+    // the size of the chunk buffers
+    private int chunkSize;
+    // the receiver of the chunks
+    private ChunkSink sink;
+    // the chunk that is being written, null if no byte has been written since
+    // the last chunk
+    private ByteBuffer current = null;
+    // flag that indicates that the last chunk has been sent
+    private boolean finished = false;
+
+    /**
+     * Create a new chunked output stream
+     * 
+     * @param pool      the pool of the chunk buffers
+     * @param chunkSize the size of the chunk buffers, including the framing
+     * @param sink      the receiver of the chunks
+     */
+    public ChunkedOutputStream(BufferPool pool, int chunkSize, ChunkSink sink) {
+        if (pool == null || sink == null) {
+            throw new NullPointerException();
+        }
+        if (chunkSize <= HEADER_ROOM + TRAILER_ROOM) {
+            throw new IllegalArgumentException();
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureRoom();
+        this.current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ensureRoom();
+            var toWrite = Math.min(len, this.current.remaining() - TRAILER_ROOM);
+            this.current.put(b, off, toWrite);
+            off += toWrite;
+            len -= toWrite;
+        }
+    }
+
+    /**
+     * Send the pending data and the last chunk, that terminates the body
+     * 
+     * @throws IOException if the sink fails
+     */
+    public void finish() throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+        if (this.current == null) {
+            newChunk();
+        }
+        sendCurrent(true);
+    }
+
+    /**
+     * Discard the pending data, giving its buffer back to the pool. Called
+     * when the body cannot be completed
+     */
+    public void abort() {
+        this.finished = true;
+        if (this.current != null) {
+            this.pool.release(this.current);
+            this.current = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        // NOTE: the stream is not finished on close, so that a producer that
+        // fails does not send a body that looks complete
+    }
+
+    private void ensureRoom() throws IOException {
+        if (this.finished) {
+            throw new IOException("the stream has been finished");
+        }
+        if (this.current != null && this.current.remaining() <= TRAILER_ROOM) {
+            sendCurrent(false);
+        }
+        if (this.current == null) {
+            newChunk();
+        }
+    }
+
+    private void newChunk() {
+        this.current = this.pool.lease(this.chunkSize);
+        // the capacity can be larger than the requested one
+        this.current.limit(Math.min(this.current.capacity(), this.chunkSize));
+        this.current.position(HEADER_ROOM);
+    }
+
+    /**
+     * Frame the current chunk and send it
+     * 
+     * @param last true if the last chunk has to be appended
+     * @throws IOException if the sink fails
+     */
+    private void sendCurrent(boolean last) throws IOException {
+        var chunk = this.current;
+        this.current = null;
+
+        var dataLength = chunk.position() - HEADER_ROOM;
+        var end = chunk.position();
+        var start = HEADER_ROOM;
+        if (dataLength > 0) {
+            // write the size line right before the data
+            var sizeLine = Integer.toHexString(dataLength) + "\r\n";
+            start = HEADER_ROOM - sizeLine.length();
+            for (int i = 0; i < sizeLine.length(); ++i) {
+                chunk.put(start + i, (byte) sizeLine.charAt(i));
+            }
+            chunk.put(TRAILER);
+            end += TRAILER.length;
+        }
+        if (last) {
+            chunk.put(LAST_CHUNK);
+            end += LAST_CHUNK.length;
+        }
+        chunk.limit(end);
+        chunk.position(start);
+        this.sink.send(chunk, last);
+    }
+}
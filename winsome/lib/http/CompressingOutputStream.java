@@ -0,0 +1,190 @@
+package winsome.lib.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream that compresses the written bytes with the gzip or the
+ * deflate content coding, writing the compressed bytes to another stream.
+ * 
+ * The deflater is not owned by the stream, so that it can be reused by the
+ * next response: it is reset when the stream is created, it is never ended,
+ * and it can be detached to be given back to its pool. Like
+ * ChunkedOutputStream, flush and close do not write anything, the compressed
+ * body is terminated by finish.
+ */
+public class CompressingOutputStream extends OutputStream {
+    // the gzip header, with no flags, no modification time and unknown OS
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final int STAGING_SIZE = 8 * 1024;
+
+    // the stream of the compressed bytes
+    private OutputStream out;
+    private ContentCoding coding;
+    private Deflater deflater;
+    // the checksum of the uncompressed bytes, only for gzip
+    private CRC32 crc = new CRC32();
+    // the buffer between the deflater and the output stream
+    private byte[] staging = new byte[STAGING_SIZE];
+
+    private long bytesIn = 0;
+    private long bytesOut = 0;
+    private boolean finished = false;
+
+    /**
+     * Create a new compressing stream
+     * 
+     * @param out      the stream of the compressed bytes
+     * @param coding   GZIP or DEFLATE
+     * @param deflater the deflater, that must produce raw deflate data for
+     *                 GZIP and zlib data for DEFLATE
+     * @throws IOException if the gzip header cannot be written
+     */
+    public CompressingOutputStream(OutputStream out, ContentCoding coding, Deflater deflater) throws IOException {
+        if (out == null || coding == null || deflater == null) {
+            throw new NullPointerException();
+        }
+        if (coding == ContentCoding.IDENTITY) {
+            throw new IllegalArgumentException();
+        }
+        this.out = out;
+        this.coding = coding;
+        this.deflater = deflater;
+        this.deflater.reset();
+        if (coding == ContentCoding.GZIP) {
+            writeOut(GZIP_HEADER, GZIP_HEADER.length);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (len == 0) {
+            return;
+        }
+        if (this.coding == ContentCoding.GZIP) {
+            this.crc.update(b, off, len);
+        }
+        this.bytesIn += len;
+        this.deflater.setInput(b, off, len);
+        deflateInput();
+    }
+
+    /**
+     * Compress the remaining bytes of a buffer, without copying them to the
+     * heap. The position of the buffer is advanced to its limit
+     * 
+     * @param src the buffer
+     * @throws IOException if the compressed bytes cannot be written
+     */
+    public void write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        if (!src.hasRemaining()) {
+            return;
+        }
+        if (this.coding == ContentCoding.GZIP) {
+            this.crc.update(src.duplicate());
+        }
+        this.bytesIn += src.remaining();
+        this.deflater.setInput(src);
+        deflateInput();
+    }
+
+    /**
+     * Compress the pending bytes and write the end of the compressed body
+     * 
+     * @throws IOException if the compressed bytes cannot be written
+     */
+    public void finish() throws IOException {
+        if (this.finished) {
+            return;
+        }
+        this.finished = true;
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            var n = this.deflater.deflate(this.staging);
+            writeOut(this.staging, n);
+        }
+        if (this.coding == ContentCoding.GZIP) {
+            // the trailer holds the checksum and the size modulo 2^32, both
+            // little endian
+            var trailer = new byte[8];
+            putIntLE(trailer, 0, (int) this.crc.getValue());
+            putIntLE(trailer, 4, (int) this.bytesIn);
+            writeOut(trailer, trailer.length);
+        }
+        // drop the reference to the last input
+        this.deflater.reset();
+    }
+
+    /**
+     * Detach the deflater from the stream, after which the stream cannot be
+     * written or finished anymore
+     * 
+     * @return the deflater, null if it has already been detached
+     */
+    Deflater detachDeflater() {
+        var deflater = this.deflater;
+        this.deflater = null;
+        this.finished = true;
+        return deflater;
+    }
+
+    ContentCoding getCoding() {
+        return coding;
+    }
+
+    /**
+     * @return the number of uncompressed bytes written to the stream
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * @return the number of compressed bytes, including the gzip framing
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    @Override
+    public void close() {
+        // NOTE: like ChunkedOutputStream, close does not finish the body
+    }
+
+    private void deflateInput() throws IOException {
+        while (!this.deflater.needsInput()) {
+            var n = this.deflater.deflate(this.staging);
+            writeOut(this.staging, n);
+        }
+    }
+
+    private void writeOut(byte[] b, int len) throws IOException {
+        if (len > 0) {
+            this.out.write(b, 0, len);
+            this.bytesOut += len;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.finished) {
+            throw new IOException("the stream has been finished");
+        }
+    }
+
+    private static void putIntLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+        b[off + 2] = (byte) (value >>> 16);
+        b[off + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,98 @@
+package winsome.lib.http;
+
+/**
+ * The content codings that the server can apply to a response body, as
+ * described in RFC 7231 section 3.1.2.1
+ */
+public enum ContentCoding {
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String token;
+
+    private ContentCoding(String token) {
+        this.token = token;
+    }
+
+    /**
+     * @return the token of the coding, as it appears in the Content-Encoding
+     *         and Accept-Encoding headers
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Get the coding with the given token
+     * 
+     * @param token the token, case insensitive
+     * @return the coding, null if the token is unknown
+     */
+    public static ContentCoding fromToken(String token) {
+        for (var coding : values()) {
+            if (coding.token.equalsIgnoreCase(token)) {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Choose the coding of a response from the Accept-Encoding header of the
+     * request. The coding with the highest quality value is chosen, gzip being
+     * preferred to deflate when they have the same. A coding with quality zero
+     * is never chosen
+     * 
+     * @param acceptEncoding the value of the Accept-Encoding header, can be
+     *                       null
+     * @return the chosen coding, IDENTITY if the client accepts no compression
+     */
+    public static ContentCoding negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return IDENTITY;
+        }
+
+        float gzipQuality = -1;
+        float deflateQuality = -1;
+        float anyQuality = -1;
+        for (var element : acceptEncoding.split(",")) {
+            // an element is a coding followed by optional parameters
+            var parts = element.split(";");
+            var coding = parts[0].trim();
+            var quality = 1.0f;
+            for (int i = 1; i < parts.length; ++i) {
+                var param = parts[i].trim();
+                if (param.startsWith("q=") || param.startsWith("Q=")) {
+                    try {
+                        quality = Float.parseFloat(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                gzipQuality = quality;
+            } else if (coding.equalsIgnoreCase("deflate")) {
+                deflateQuality = quality;
+            } else if (coding.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+
+        // the codings that are not listed get the quality of the wildcard
+        if (gzipQuality < 0) {
+            gzipQuality = anyQuality;
+        }
+        if (deflateQuality < 0) {
+            deflateQuality = anyQuality;
+        }
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+        if (deflateQuality > 0) {
+            return DEFLATE;
+        }
+        return IDENTITY;
+    }
+}
@@ -0,0 +1,98 @@
+package winsome.lib.http;
+
+/**
+ * Utilities for the entity tags of the ETag and If-None-Match headers, as
+ * described in RFC 7232 section 2.3.
+ * 
+ * A tag is built by hashing the versions of the resources that make up a
+ * representation, so that it is computed without serializing anything: the
+ * tag changes whenever one of the versions changes.
+ */
+public class EntityTag {
+    // the 64 bit FNV-1a parameters
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Builder of a strong entity tag
+     */
+    public static class Builder {
+        private long hash = FNV_OFFSET_BASIS;
+
+        /**
+         * Add a number to the tag
+         * 
+         * @param value the number
+         * @return this builder
+         */
+        public Builder add(long value) {
+            for (int i = 0; i < 8; ++i) {
+                this.hash ^= (value >>> (i * 8)) & 0xff;
+                this.hash *= FNV_PRIME;
+            }
+            return this;
+        }
+
+        /**
+         * Add a string to the tag
+         * 
+         * @param value the string
+         * @return this builder
+         */
+        public Builder add(String value) {
+            add(value.length());
+            for (int i = 0; i < value.length(); ++i) {
+                this.hash ^= value.charAt(i);
+                this.hash *= FNV_PRIME;
+            }
+            return this;
+        }
+
+        /**
+         * @return the quoted strong entity tag
+         */
+        public String build() {
+            return "\"" + Long.toHexString(this.hash) + "\"";
+        }
+    }
+
+    /**
+     * Check if an entity tag matches one of the tags of an If-None-Match
+     * header. The comparison is weak, as required for If-None-Match, so that
+     * a weak and a strong tag with the same value match
+     * 
+     * @param ifNoneMatch the value of the If-None-Match header
+     * @param tag         the current entity tag of the resource
+     * @return true if the tag matches
+     */
+    public static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || tag == null) {
+            return false;
+        }
+        if (ifNoneMatch.trim().equals("*")) {
+            return true;
+        }
+        var opaqueTag = opaque(tag);
+        for (var candidate : ifNoneMatch.split(",")) {
+            if (opaque(candidate.trim()).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the weak version of a tag. Used when the body is compressed, since
+     * a strong tag identifies the exact bytes of the body
+     * 
+     * @param tag the tag
+     * @return the weak tag
+     */
+    public static String weaken(String tag) {
+        return tag.startsWith("W/") ? tag : "W/" + tag;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
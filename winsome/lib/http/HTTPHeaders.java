@@ -0,0 +1,188 @@
+package winsome.lib.http;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The header fields of an HTTP message.
+ * From RFC 7230 section 3.2 field names are case-insensitive, so every lookup
+ * ignores the case. The fields are kept in insertion order in two parallel
+ * arrays, since a message has only a handful of them, and reading a field
+ * does not copy or allocate anything.
+ * 
+ * The names of the well-known fields used by the server and the client are
+ * pre-interned: a field parsed or set with any case of a well-known name is
+ * stored with the constant below, so that lookups with the constant are
+ * resolved by reference.
+ */
+public class HTTPHeaders {
+    // the well-known field names
+    public static final String CONTENT_LENGTH = "Content-Length";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String CONNECTION = "Connection";
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String IF_NONE_MATCH = "If-None-Match";
+    public static final String RETRY_AFTER = "Retry-After";
+    public static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String ETAG = "ETag";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String ACCEPT = "Accept";
+
+    private static final String[] WELL_KNOWN_NAMES = { CONTENT_LENGTH, AUTHORIZATION, CONNECTION, ACCEPT_ENCODING,
+            IF_NONE_MATCH, RETRY_AFTER, TRANSFER_ENCODING, CONTENT_ENCODING, VARY, ETAG, CONTENT_TYPE, ACCEPT };
+
+    // the initial number of fields that can be held without growing
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Get the value of a field
+     * 
+     * @param name the field name, in any case
+     * @return the value, null if the field is not present
+     */
+    public String get(String name) {
+        var i = indexOf(name);
+        return i == -1 ? null : this.values[i];
+    }
+
+    /**
+     * Set the value of a field, replacing the previous one. If the value is
+     * null the field is removed
+     * 
+     * @param name  the field name, in any case
+     * @param value the value
+     */
+    public void set(String name, String value) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        var i = indexOf(name);
+        if (value == null) {
+            if (i != -1) {
+                remove(i);
+            }
+        } else if (i != -1) {
+            this.values[i] = value;
+        } else {
+            add(name, value);
+        }
+    }
+
+    /**
+     * @return the number of fields
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the name of the i-th field, in insertion order
+     * 
+     * @param i the index of the field
+     * @return the field name
+     */
+    public String nameAt(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.names[i];
+    }
+
+    /**
+     * Get the value of the i-th field, in insertion order
+     * 
+     * @param i the index of the field
+     * @return the field value
+     */
+    public String valueAt(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return this.values[i];
+    }
+
+    /**
+     * Get the pre-interned constant of a well-known field name
+     * 
+     * @param name the field name, in any case
+     * @return the constant if the name is well-known, the name itself
+     *         otherwise
+     */
+    public static String intern(String name) {
+        for (var wellKnown : WELL_KNOWN_NAMES) {
+            if (wellKnown == name || wellKnown.equalsIgnoreCase(name)) {
+                return wellKnown;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Recognize a well-known field name directly in the received bytes, so
+     * that it does not have to be decoded
+     * 
+     * @param buffer the buffer that holds the name
+     * @param start  the offset of the name
+     * @param length the length of the name
+     * @return the constant of the well-known name, null if the name is not
+     *         well-known
+     */
+    public static String matchWellKnown(ByteBuffer buffer, int start, int length) {
+        for (var wellKnown : WELL_KNOWN_NAMES) {
+            if (wellKnown.length() != length) {
+                continue;
+            }
+            var i = 0;
+            while (i < length && Character.toLowerCase((char) (buffer.get(start + i) & 0xff)) == Character
+                    .toLowerCase(wellKnown.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return wellKnown;
+            }
+        }
+        return null;
+    }
+
+    private int indexOf(String name) {
+        // fast path for the pre-interned names
+        for (int i = 0; i < this.size; ++i) {
+            if (this.names[i] == name) {
+                return i;
+            }
+        }
+        for (int i = 0; i < this.size; ++i) {
+            if (this.names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void add(String name, String value) {
+        if (this.size == this.names.length) {
+            var newNames = new String[this.size * 2];
+            var newValues = new String[this.size * 2];
+            System.arraycopy(this.names, 0, newNames, 0, this.size);
+            System.arraycopy(this.values, 0, newValues, 0, this.size);
+            this.names = newNames;
+            this.values = newValues;
+        }
+        this.names[this.size] = intern(name);
+        this.values[this.size] = value;
+        this.size++;
+    }
+
+    private void remove(int i) {
+        System.arraycopy(this.names, i + 1, this.names, i, this.size - i - 1);
+        System.arraycopy(this.values, i + 1, this.values, i, this.size - i - 1);
+        this.size--;
+        this.names[this.size] = null;
+        this.values[this.size] = null;
+    }
+}
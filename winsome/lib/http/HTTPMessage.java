@@ -1,7 +1,7 @@
 package winsome.lib.http;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Abstract class representing an HTTP message.
@@ -9,9 +9,12 @@ import java.util.Map;
 public abstract class HTTPMessage {
     // the http version
     protected String HTTPVersion = "HTTP/1.1";
-    // the headers map
-    protected Map<String, String> headers = new HashMap<>();
-    // the body of the message
+    // the header fields
+    protected HTTPHeaders headers = new HTTPHeaders();
+    // the bytes of the body, that are what is framed by Content-Length and
+    // sent on the wire
+    protected byte[] bodyBytes;
+    // the body decoded as UTF-8, only when it is requested as a string
     protected String body;
 
     /**
@@ -35,20 +38,32 @@ public abstract class HTTPMessage {
      * @return the formatted message
      */
     public String getFormattedMessage() {
+        var outStr = getFormattedHead();
+
+        // get the body, if present
+        var body = this.getBody();
+        if (body != null) {
+            outStr += body;
+        }
+        return outStr;
+    }
+
+    /**
+     * Get the start line and the headers of the message formatted, including
+     * the empty line that terminates them
+     * 
+     * @return the formatted head
+     */
+    public String getFormattedHead() {
         // get the start line
         var outStr = this.getFormattedStartLine() + "\r\n";
 
         // get the headers
-        for (var k : this.headers.keySet()) {
-            outStr += k + ": " + this.headers.get(k) + "\r\n";
+        for (int i = 0; i < this.headers.size(); ++i) {
+            outStr += this.headers.nameAt(i) + ": " + this.headers.valueAt(i) + "\r\n";
         }
 
         outStr += "\r\n";
-
-        // get the body, if present
-        if (this.body != null) {
-            outStr += this.body;
-        }
         return outStr;
     }
 
@@ -70,21 +85,32 @@ public abstract class HTTPMessage {
         // optional trailing whitespace.
 
         for (var headerLine : headerLines) {
-            var tokens = headerLine.split(":", 2);
-            if (tokens.length != 2) {
+            var colon = headerLine.indexOf(':');
+            if (colon <= 0) {
                 throw new HTTPParsingException();
             }
-            this.headers.put(tokens[0], tokens[1].trim());
+            this.headers.set(headerLine.substring(0, colon), headerLine.substring(colon + 1).trim());
         }
     }
 
     /**
-     * Get the headers map
+     * Get the value of a header field
      * 
-     * @return the header's map
+     * @param name the field name, in any case
+     * @return the value, null if the field is not present
      */
-    public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+
+    /**
+     * Get the header fields. The returned object is the message's own table,
+     * that must not be modified by the caller
+     * 
+     * @return the header fields
+     */
+    public HTTPHeaders getHeaders() {
+        return this.headers;
     }
 
     /**
@@ -93,9 +119,51 @@ public abstract class HTTPMessage {
      * @return the body
      */
     public String getBody() {
+        if (this.body == null && this.bodyBytes != null) {
+            this.body = new String(this.bodyBytes, StandardCharsets.UTF_8);
+        }
         return body;
     }
 
+    /**
+     * Get the bytes of the body of the message. A body that has been set as
+     * a string is encoded in UTF-8
+     * 
+     * @return the bytes of the body, null if there is no body
+     */
+    public byte[] getBodyBytes() {
+        if (this.bodyBytes == null && this.body != null) {
+            this.bodyBytes = this.body.getBytes(StandardCharsets.UTF_8);
+        }
+        return bodyBytes;
+    }
+
+    /**
+     * Get the body of the message as a read-only buffer that wraps its bytes,
+     * so that it can be written without being copied
+     * 
+     * @return the buffer of the body, ready to be read, null if there is no
+     *         body
+     */
+    public ByteBuffer getBodyBuffer() {
+        var bytes = getBodyBytes();
+        if (bytes == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the length of the body in bytes, that is the value of its
+     * Content-Length
+     * 
+     * @return the number of bytes of the body, 0 if there is no body
+     */
+    public int getBodyLength() {
+        var bytes = getBodyBytes();
+        return bytes == null ? 0 : bytes.length;
+    }
+
     /**
      * Parse the body of the message
      * 
@@ -103,6 +171,19 @@ public abstract class HTTPMessage {
      */
     public void parseBody(String body) {
         this.body = body;
+        this.bodyBytes = null;
+    }
+
+    /**
+     * Parse the body of the message from its bytes, as they have been
+     * received. The body is decoded as UTF-8 only if it is requested as a
+     * string
+     * 
+     * @param bodyBytes the bytes of the message body
+     */
+    public void parseBody(byte[] bodyBytes) {
+        this.body = null;
+        this.bodyBytes = bodyBytes;
     }
 
     /**
@@ -110,15 +191,30 @@ public abstract class HTTPMessage {
      * and consequently update the Content-length header to the length
      * of the new body
      * This is done because subclasses do not have access to the headers map
+     * The body is encoded in UTF-8 once, here, since Content-Length counts
+     * the bytes of the body and not its characters
      * 
      * @param body
      */
     protected void setBodySuper(String body) {
+        setBodySuper(body == null ? null : body.getBytes(StandardCharsets.UTF_8));
         this.body = body;
-        if (body == null) {
-            this.setHeaderSuper("Content-Length", null);
+    }
+
+    /**
+     * This method is used by subclasses to set the body of an HTTP message
+     * as bytes and consequently update the Content-length header to the
+     * number of bytes
+     * 
+     * @param bodyBytes the bytes of the body
+     */
+    protected void setBodySuper(byte[] bodyBytes) {
+        this.body = null;
+        this.bodyBytes = bodyBytes;
+        if (bodyBytes == null) {
+            this.setHeaderSuper(HTTPHeaders.CONTENT_LENGTH, null);
         } else {
-            this.setHeaderSuper("Content-Length", Integer.toString(body.length()));
+            this.setHeaderSuper(HTTPHeaders.CONTENT_LENGTH, Integer.toString(bodyBytes.length));
         }
     }
 
@@ -132,15 +228,7 @@ public abstract class HTTPMessage {
      * @param value the value of the header
      */
     protected void setHeaderSuper(String key, String value) {
-        if (value == null) {
-            this.headers.remove(key);
-        } else {
-            if (!this.headers.containsKey(key)) {
-                this.headers.put(key, value);
-            } else {
-                this.headers.replace(key, value);
-            }
-        }
+        this.headers.set(key, value);
     }
 
 }
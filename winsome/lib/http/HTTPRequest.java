@@ -92,6 +92,18 @@ public class HTTPRequest extends HTTPMessage {
         return this;
     }
 
+    /**
+     * Set the request body as bytes. This affects the Content-length header
+     * that is set equal to the number of bytes
+     * 
+     * @param bodyBytes the bytes of the new body
+     * @return the modified HTTP request
+     */
+    public HTTPRequest setBody(byte[] bodyBytes) {
+        super.setBodySuper(bodyBytes);
+        return this;
+    }
+
     /**
      * Set the header with the new value. If the value is null then
      * the header entry is removed
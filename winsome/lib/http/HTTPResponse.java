@@ -1,12 +1,23 @@
 package winsome.lib.http;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 
 import winsome.common.responses.ErrorResponse;
 
 public class HTTPResponse extends HTTPMessage {
     private HTTPResponseCode responseCode;
+    // the object that will be serialized into the body, if any
+    private Object bodyEntity = null;
+    // the producer of the body, if the body is streamed in chunks
+    private StreamingBody streamingBody = null;
+    // the coding that the client accepts for the body
+    private ContentCoding contentCoding = ContentCoding.IDENTITY;
+    // the format that the client accepts for the body entity
+    private BodyFormat bodyFormat = BodyFormat.JSON;
+    // the pre-encoded response that this response is equal to, null if the
+    // response has to be encoded
+    private StaticResponse staticResponse = null;
 
     public HTTPResponse() {
     }
@@ -57,6 +68,7 @@ public class HTTPResponse extends HTTPMessage {
      * @param responseCode
      */
     public void setResponseCode(HTTPResponseCode responseCode) {
+        this.staticResponse = null;
         this.responseCode = responseCode;
     }
 
@@ -68,10 +80,200 @@ public class HTTPResponse extends HTTPMessage {
      * @return the modfied HTTP response changed
      */
     public HTTPResponse setBody(String body) {
+        this.staticResponse = null;
+        clearStreamingBody();
         super.setBodySuper(body);
+        this.bodyEntity = null;
         return this;
     }
 
+    /**
+     * Set the response body entity, that is an object that will be
+     * serialized as the body of the response, in the negotiated format.
+     * The serialization is deferred until the body is actually needed, so that
+     * the response encoder can serialize the object directly into the
+     * connection buffers
+     * 
+     * @param bodyEntity the body object
+     * @return the modified HTTP response
+     */
+    public HTTPResponse setBodyEntity(Object bodyEntity) {
+        this.staticResponse = null;
+        clearStreamingBody();
+        super.setBodySuper((String) null);
+        this.bodyEntity = bodyEntity;
+        return this;
+    }
+
+    /**
+     * Set the producer of a body that is streamed with the chunked transfer
+     * coding. The Content-Length header is replaced by Transfer-Encoding
+     * 
+     * @param streamingBody the producer of the body
+     * @return the modified HTTP response
+     */
+    public HTTPResponse setStreamingBody(StreamingBody streamingBody) {
+        if (streamingBody == null) {
+            throw new NullPointerException();
+        }
+        this.staticResponse = null;
+        super.setBodySuper((String) null);
+        this.bodyEntity = null;
+        this.streamingBody = streamingBody;
+        super.setHeaderSuper(HTTPHeaders.TRANSFER_ENCODING, "chunked");
+        return this;
+    }
+
+    /**
+     * Choose the coding of the body among the ones accepted by the client.
+     * The body is compressed by the encoder only if it is large enough, in
+     * which case the Content-Encoding header is set
+     * 
+     * @param acceptEncoding the Accept-Encoding header of the request, can be
+     *                       null
+     * @return the modified HTTP response
+     */
+    public HTTPResponse negotiateContentCoding(String acceptEncoding) {
+        this.contentCoding = ContentCoding.negotiate(acceptEncoding);
+        return this;
+    }
+
+    /**
+     * Choose the format of the body entity, or of the streamed body, among the
+     * ones accepted by the client
+     * 
+     * @param accept the Accept header of the request, can be null
+     * @return the modified HTTP response
+     */
+    public HTTPResponse negotiateBodyFormat(String accept) {
+        this.bodyFormat = BodyFormat.negotiate(accept);
+        return this;
+    }
+
+    /**
+     * Get the format that the client accepts for the body entity
+     * 
+     * @return the format, JSON if none has been negotiated
+     */
+    public BodyFormat getBodyFormat() {
+        return bodyFormat;
+    }
+
+    /**
+     * Get the coding that the client accepts for the body
+     * 
+     * @return the coding, IDENTITY if none has been negotiated
+     */
+    public ContentCoding getContentCoding() {
+        return contentCoding;
+    }
+
+    /**
+     * Get the pre-encoded response that this response is equal to
+     * 
+     * @return the static response, null if the response has been modified
+     *         and has to be encoded
+     */
+    public StaticResponse getStaticResponse() {
+        return staticResponse;
+    }
+
+    /**
+     * Get the producer of the streamed body
+     * 
+     * @return the producer, null if the body is not streamed
+     */
+    public StreamingBody getStreamingBody() {
+        return streamingBody;
+    }
+
+    /**
+     * Get the response body entity
+     * 
+     * @return the body object, null if the response has no body entity
+     */
+    public Object getBodyEntity() {
+        return bodyEntity;
+    }
+
+    /**
+     * Get the body of the response. If the response has a body entity, it is
+     * serialized
+     * 
+     * @return the body
+     */
+    @Override
+    public String getBody() {
+        serializeBodyEntity();
+        produceStreamingBody();
+        return super.getBody();
+    }
+
+    /**
+     * Get the bytes of the body of the response. If the response has a body
+     * entity, it is serialized
+     * 
+     * @return the bytes of the body
+     */
+    @Override
+    public byte[] getBodyBytes() {
+        serializeBodyEntity();
+        produceStreamingBody();
+        return super.getBodyBytes();
+    }
+
+    /**
+     * Get the entire response formatted, that is ready to be sent.
+     * If the response has a body entity, it is serialized
+     * 
+     * @return the formatted message
+     */
+    @Override
+    public String getFormattedMessage() {
+        serializeBodyEntity();
+        produceStreamingBody();
+        return super.getFormattedMessage();
+    }
+
+    /**
+     * Serialize the body entity, if present, into the body
+     */
+    private void serializeBodyEntity() {
+        if (this.bodyEntity == null) {
+            return;
+        }
+        try {
+            super.setBodySuper(this.bodyFormat.encode(this.bodyEntity));
+            this.bodyEntity = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Produce the whole streamed body, if present, into the body
+     */
+    private void produceStreamingBody() {
+        if (this.streamingBody == null) {
+            return;
+        }
+        var out = new ByteArrayOutputStream();
+        try {
+            this.streamingBody.writeTo(out, this.bodyFormat);
+            clearStreamingBody();
+            super.setBodySuper(out.toByteArray());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void clearStreamingBody() {
+        if (this.streamingBody != null) {
+            this.streamingBody = null;
+            super.setHeaderSuper(HTTPHeaders.TRANSFER_ENCODING, null);
+        }
+    }
+
     /**
      * Set the header with the new value. If the value is null then
      * the header entry is removed
@@ -81,31 +283,77 @@ public class HTTPResponse extends HTTPMessage {
      * @return the modified HTTP response
      */
     public HTTPResponse setHeader(String key, String value) {
+        // the pre-encoded response does not have the new header
+        this.staticResponse = null;
         super.setHeaderSuper(key, value);
         return this;
     }
 
     /**
      * Static method to forge a new response with given Object as body.
-     * The object is attempted to serialize into json
+     * The object will be serialized into json when the response is encoded
      * 
      * @param code the response code
      * @param body the body object
-     * @return null if the serialization was unsuccessful, a new HTTPResponse
-     *         otherwise
+     * @return a new HTTPResponse
      */
     public static HTTPResponse response(HTTPResponseCode code, Object body) {
-        var objectMapper = new ObjectMapper();
-        try {
-            return new HTTPResponse(code)
-                    .setBody(objectMapper.writeValueAsString(body));
-        } catch (JsonProcessingException e) {
-            e.printStackTrace();
-            return null;
+        return new HTTPResponse(code).setBodyEntity(body);
+    }
+
+    /**
+     * Static method to forge a new response whose body is streamed in chunks
+     * 
+     * @param code the response code
+     * @param body the producer of the body
+     * @return a new HTTPResponse
+     */
+    public static HTTPResponse streamingResponse(HTTPResponseCode code, StreamingBody body) {
+        return new HTTPResponse(code).setStreamingBody(body);
+    }
+
+    /**
+     * Static method to forge a new response equal to a pre-encoded one. The
+     * response is written from the shared bytes of the static response, unless
+     * it is modified
+     * 
+     * @param staticResponse the static response
+     * @return a new HTTPResponse
+     */
+    public static HTTPResponse staticResponse(StaticResponse staticResponse) {
+        var response = new HTTPResponse(staticResponse.getResponseCode());
+        if (staticResponse.getBodyEntity() != null) {
+            response.setBodyEntity(staticResponse.getBodyEntity());
         }
+        response.staticResponse = staticResponse;
+        return response;
     }
 
+    /**
+     * Static method to forge a new response without a body, that is written
+     * from a pre-encoded response
+     * 
+     * @param code the response code
+     * @return a new HTTPResponse
+     */
+    public static HTTPResponse emptyResponse(HTTPResponseCode code) {
+        return staticResponse(StaticResponse.of(code));
+    }
+
+    /**
+     * Static method to forge a new error response, whose body contains the
+     * reason of the error. The response is pre-encoded the first time it is
+     * requested
+     * 
+     * @param code   the response code
+     * @param reason the reason of the error
+     * @return a new HTTPResponse
+     */
     public static HTTPResponse errorResponse(HTTPResponseCode code, String reason) {
-        return response(code, ErrorResponse.from(reason));
+        var staticResponse = StaticResponse.error(code, reason);
+        if (staticResponse == null) {
+            return response(code, ErrorResponse.from(reason));
+        }
+        return staticResponse(staticResponse);
     }
 }
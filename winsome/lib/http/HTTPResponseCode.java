@@ -8,11 +8,13 @@ public enum HTTPResponseCode {
     CREATED(201, "Created"),
     ACCEPTED(202, "Accepted"),
     NO_CONTENT(204, "No Content"),
+    NOT_MODIFIED(304, "Not Modified"),
     BAD_REQUEST(400, "Bad Request"),
     UNAUTHORIZED(401, "Unauthorized"),
     NOT_FOUND(404, "Not Found"),
     UNPROCESSABLE_ENTITY(422, "Unprocessable Entity"),
-    INTERNAL_SERVER_ERROR(500, "Internal Server Error");
+    INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+    SERVICE_UNAVAILABLE(503, "Service Unavailable");
 
     private int code;
 
@@ -50,6 +52,8 @@ public enum HTTPResponseCode {
                 return ACCEPTED;
             case 204:
                 return NO_CONTENT;
+            case 304:
+                return NOT_MODIFIED;
             case 400:
                 return BAD_REQUEST;
             case 401:
@@ -60,6 +64,8 @@ public enum HTTPResponseCode {
                 return UNPROCESSABLE_ENTITY;
             case 500:
                 return INTERNAL_SERVER_ERROR;
+            case 503:
+                return SERVICE_UNAVAILABLE;
             default:
                 return null;
         }
@@ -0,0 +1,208 @@
+package winsome.lib.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import winsome.lib.nio.BufferPool;
+import winsome.lib.nio.PooledOutputStream;
+
+/**
+ * Encoder that formats an HTTP response into buffers leased from a buffer
+ * pool, without building the whole message as a String.
+ * The first buffer contains the status line and the headers, the following
+ * ones the body. If the response has a body entity, it is serialized in the
+ * negotiated format directly into the pooled buffers.
+ * The resulting array is meant to be sent with a single gathering write.
+ * 
+ * If a compressor is given and the client accepts a compressed body, a large
+ * enough body is compressed from the pooled buffers into new pooled buffers.
+ * 
+ * A response with a streamed body cannot be encoded at once: only its head is
+ * encoded here, and the body is framed by a ChunkedOutputStream.
+ */
+public class HTTPResponseEncoder {
+    /**
+     * Encode an HTTP response. The caller owns the returned buffers and has to
+     * give them back to the pool, that ignores the read-only views of the
+     * shared buffers of the static responses.
+     * If the body entity cannot be serialized, an INTERNAL SERVER ERROR
+     * response is encoded instead
+     * 
+     * @param response the response to encode
+     * @param pool     the pool from which the buffers are leased
+     * @return the buffers containing the formatted response, ready to be read
+     */
+    public static ByteBuffer[] encode(HTTPResponse response, BufferPool pool) {
+        return encode(response, pool, null);
+    }
+
+    /**
+     * Encode an HTTP response, compressing its body with the negotiated
+     * coding. The caller owns the returned buffers and has to give them back
+     * to the pool.
+     * 
+     * @param response   the response to encode
+     * @param pool       the pool from which the buffers are leased
+     * @param compressor the compressor of the bodies, null to disable the
+     *                   compression
+     * @return the buffers containing the formatted response, ready to be read
+     */
+    public static ByteBuffer[] encode(HTTPResponse response, BufferPool pool, ResponseCompressor compressor) {
+        if (response == null || pool == null) {
+            throw new NullPointerException();
+        }
+        if (response.getStreamingBody() != null) {
+            throw new IllegalArgumentException("a streamed body is encoded by a ChunkedOutputStream");
+        }
+
+        // a static response has been encoded already
+        var staticResponse = response.getStaticResponse();
+        if (staticResponse != null) {
+            return staticResponse.buffers(response.getBodyFormat());
+        }
+
+        // encode the body first, since its length is needed by the headers
+        ByteBuffer[] bodyBuffers;
+        var bodyLength = 0;
+        if (response.getBodyEntity() != null) {
+            var stream = new PooledOutputStream(pool);
+            try {
+                response.getBodyFormat().write(stream, response.getBodyEntity());
+            } catch (IOException e) {
+                e.printStackTrace();
+                stream.release();
+                return encode(HTTPResponse.emptyResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR), pool);
+            }
+            bodyLength = stream.size();
+            bodyBuffers = stream.toBuffers();
+            setRepresentationHeaders(response, compressor != null);
+        } else if (response.getBodyBytes() != null) {
+            // the body is written straight from its bytes, the pool ignores
+            // the heap buffer that wraps them
+            bodyLength = response.getBodyLength();
+            bodyBuffers = new ByteBuffer[] { response.getBodyBuffer() };
+        } else {
+            bodyBuffers = new ByteBuffer[0];
+            if (response.getResponseCode() == HTTPResponseCode.NOT_MODIFIED) {
+                // the validator of the body the client already has
+                setValidatorHeaders(response, compressor != null);
+            }
+        }
+
+        // compress the body if the client accepts it and it is worth it
+        if (bodyBuffers.length > 0 && compressor != null
+                && compressor.shouldCompress(response.getContentCoding(), bodyLength)
+                && response.getHeader(HTTPHeaders.CONTENT_ENCODING) == null) {
+            var coding = response.getContentCoding();
+            bodyBuffers = compressor.compress(bodyBuffers, coding, pool);
+            bodyLength = 0;
+            for (var buffer : bodyBuffers) {
+                bodyLength += buffer.remaining();
+            }
+            response.setHeader(HTTPHeaders.CONTENT_ENCODING, coding.getToken());
+            weakenEntityTag(response);
+        }
+        if (bodyBuffers.length > 0) {
+            response.setHeader(HTTPHeaders.CONTENT_LENGTH, Integer.toString(bodyLength));
+        }
+        if (compressor != null && bodyBuffers.length > 0 && response.getHeader(HTTPHeaders.VARY) == null) {
+            // the body depends on the Accept-Encoding header of the request
+            response.setHeader(HTTPHeaders.VARY, HTTPHeaders.ACCEPT_ENCODING);
+        }
+
+        var out = new ByteBuffer[bodyBuffers.length + 1];
+        out[0] = encodeHead(response, pool);
+        System.arraycopy(bodyBuffers, 0, out, 1, bodyBuffers.length);
+        return out;
+    }
+
+    /**
+     * Encode the status line and the headers of a response into a single
+     * buffer of the exact size
+     * 
+     * @param response the response
+     * @param pool     the pool from which the buffer is leased
+     * @return the buffer, ready to be read
+     */
+    public static ByteBuffer encodeHead(HTTPResponse response, BufferPool pool) {
+        var startLine = response.getFormattedStartLine();
+
+        // compute the length of the head
+        var length = startLine.length() + 2;
+        var headers = response.headers;
+        for (int i = 0; i < headers.size(); ++i) {
+            length += headers.nameAt(i).length() + 2 + headers.valueAt(i).length() + 2;
+        }
+        length += 2;
+
+        // write the head, the start line and the headers are US-ASCII
+        var head = pool.lease(length);
+        putAscii(head, startLine);
+        putCRLF(head);
+        for (int i = 0; i < headers.size(); ++i) {
+            putAscii(head, headers.nameAt(i));
+            head.put((byte) ':');
+            head.put((byte) ' ');
+            putAscii(head, headers.valueAt(i));
+            putCRLF(head);
+        }
+        putCRLF(head);
+        return head.flip();
+    }
+
+    /**
+     * Set the headers that describe the negotiated representation of a body
+     * entity or of a streamed body: its Content-Type and its validator headers
+     * 
+     * @param response           the response
+     * @param compressionEnabled true if the body can be compressed
+     */
+    public static void setRepresentationHeaders(HTTPResponse response, boolean compressionEnabled) {
+        response.setHeader(HTTPHeaders.CONTENT_TYPE, response.getBodyFormat().getMediaType());
+        setValidatorHeaders(response, compressionEnabled);
+    }
+
+    /**
+     * Set the entity tag and the Vary header of a response from its negotiated
+     * format and coding only, so that a NOT MODIFIED response carries the same
+     * ones as the full response it validates, whose body it never sees.
+     * The tag is made weak for a binary body, since it is computed from the
+     * content and not from the bytes of a given format, and for a body that
+     * could be compressed, whatever its size
+     * 
+     * @param response           the response
+     * @param compressionEnabled true if the body can be compressed
+     */
+    public static void setValidatorHeaders(HTTPResponse response, boolean compressionEnabled) {
+        if (response.getBodyFormat() != BodyFormat.JSON
+                || (compressionEnabled && response.getContentCoding() != ContentCoding.IDENTITY)) {
+            weakenEntityTag(response);
+        }
+        response.setHeader(HTTPHeaders.VARY,
+                compressionEnabled ? HTTPHeaders.ACCEPT + ", " + HTTPHeaders.ACCEPT_ENCODING : HTTPHeaders.ACCEPT);
+    }
+
+    /**
+     * Make the entity tag of a response weak, if it has one. Called when the
+     * body is compressed, since the compressed bytes depend on the coding
+     * 
+     * @param response the response
+     */
+    public static void weakenEntityTag(HTTPResponse response) {
+        var tag = response.getHeader(HTTPHeaders.ETAG);
+        if (tag != null) {
+            response.setHeader(HTTPHeaders.ETAG, EntityTag.weaken(tag));
+        }
+    }
+
+    private static void putAscii(ByteBuffer buffer, String str) {
+        for (int i = 0; i < str.length(); ++i) {
+            buffer.put((byte) str.charAt(i));
+        }
+    }
+
+    private static void putCRLF(ByteBuffer buffer) {
+        buffer.put((byte) '\r');
+        buffer.put((byte) '\n');
+    }
+}
@@ -0,0 +1,211 @@
+package winsome.lib.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Class that reads HTTP responses from a blocking input stream.
+ * The input is read as bytes, so that the Content-Length of the body is
+ * counted in bytes, and bodies sent with the chunked transfer coding are
+ * decoded, as described in RFC 7230 section 4.1. Bodies compressed with one
+ * of the accepted content codings are decompressed.
+ */
+public class HTTPResponseReader {
+    // the value of the Accept-Encoding header of the requests
+    public static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+    // the maximum length of a start line, header line or chunk size line
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private InputStream input;
+
+    /**
+     * Create a new response reader
+     * 
+     * @param input the input stream of the connection
+     */
+    public HTTPResponseReader(InputStream input) {
+        if (input == null) {
+            throw new NullPointerException();
+        }
+        this.input = new BufferedInputStream(input);
+    }
+
+    /**
+     * Read the next response, blocking until it has been completely received
+     * 
+     * @return the response
+     * @throws IOException          if the connection fails or is closed
+     * @throws HTTPParsingException if the response is malformed
+     */
+    public HTTPResponse readResponse() throws IOException, HTTPParsingException {
+        var response = new HTTPResponse();
+        // parse the start line
+        response.parseStartLine(readLine());
+
+        // read and parse the headers
+        response.parseHeaders(readHeaderLines());
+
+        var transferEncoding = response.getHeader(HTTPHeaders.TRANSFER_ENCODING);
+        var contentLength = response.getHeader(HTTPHeaders.CONTENT_LENGTH);
+        byte[] body = null;
+        if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+            body = readChunkedBody();
+        } else if (contentLength != null) {
+            int bytesToRead;
+            try {
+                bytesToRead = Integer.parseInt(contentLength);
+            } catch (NumberFormatException e) {
+                throw new HTTPParsingException();
+            }
+            if (bytesToRead < 0) {
+                throw new HTTPParsingException();
+            }
+            body = readBytes(bytesToRead);
+        }
+
+        if (body != null) {
+            var contentEncoding = response.getHeader(HTTPHeaders.CONTENT_ENCODING);
+            if (contentEncoding != null) {
+                body = decode(body, contentEncoding);
+            }
+            response.parseBody(body);
+        }
+        return response;
+    }
+
+    /**
+     * Decompress a body
+     * 
+     * @param body   the compressed body
+     * @param coding the token of the content coding
+     * @return the decompressed body
+     * @throws IOException          if the body is corrupted
+     * @throws HTTPParsingException if the coding is not supported
+     */
+    private byte[] decode(byte[] body, String coding) throws IOException, HTTPParsingException {
+        var contentCoding = ContentCoding.fromToken(coding.trim());
+        if (contentCoding == null) {
+            throw new HTTPParsingException();
+        }
+        switch (contentCoding) {
+            case GZIP:
+                try (var in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    return in.readAllBytes();
+                }
+            case DEFLATE:
+                try (var in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+                    return in.readAllBytes();
+                }
+            default:
+                return body;
+        }
+    }
+
+    /**
+     * Read a body sent with the chunked transfer coding, including the
+     * trailer section, that is ignored
+     * 
+     * @return the decoded body
+     * @throws IOException
+     * @throws HTTPParsingException
+     */
+    private byte[] readChunkedBody() throws IOException, HTTPParsingException {
+        var body = new ByteArrayOutputStream();
+        while (true) {
+            // the chunk size can be followed by extensions, that are ignored
+            var sizeLine = readLine();
+            var extensionsStart = sizeLine.indexOf(';');
+            if (extensionsStart >= 0) {
+                sizeLine = sizeLine.substring(0, extensionsStart);
+            }
+            int chunkSize;
+            try {
+                chunkSize = Integer.parseInt(sizeLine.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new HTTPParsingException();
+            }
+            if (chunkSize < 0) {
+                throw new HTTPParsingException();
+            }
+            if (chunkSize == 0) {
+                break;
+            }
+
+            body.write(readBytes(chunkSize));
+            // every chunk is terminated by CRLF
+            if (!readLine().isEmpty()) {
+                throw new HTTPParsingException();
+            }
+        }
+        readHeaderLines();
+        return body.toByteArray();
+    }
+
+    /**
+     * Read header lines up to the empty line that terminates them
+     * 
+     * @return the header lines
+     * @throws IOException
+     * @throws HTTPParsingException
+     */
+    private String[] readHeaderLines() throws IOException, HTTPParsingException {
+        var lines = new ArrayList<String>();
+        var line = readLine();
+        while (!line.isEmpty()) {
+            lines.add(line);
+            line = readLine();
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Read exactly the given number of bytes
+     * 
+     * @param length the number of bytes
+     * @return the bytes
+     * @throws IOException if the stream ends before
+     */
+    private byte[] readBytes(int length) throws IOException {
+        var bytes = this.input.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+        return bytes;
+    }
+
+    /**
+     * Read a line terminated by CRLF or LF, without the terminator
+     * 
+     * @return the line
+     * @throws IOException          if the stream ends before the terminator
+     * @throws HTTPParsingException if the line is too long
+     */
+    private String readLine() throws IOException, HTTPParsingException {
+        var line = new StringBuilder();
+        while (true) {
+            var b = this.input.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (b == '\n') {
+                break;
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new HTTPParsingException();
+            }
+            line.append((char) b);
+        }
+        var length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+}
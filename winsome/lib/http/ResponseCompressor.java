@@ -0,0 +1,225 @@
+package winsome.lib.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import winsome.lib.nio.BufferPool;
+import winsome.lib.nio.PooledOutputStream;
+
+/**
+ * Class that compresses response bodies with the coding negotiated with the
+ * client. The bodies are compressed from pooled buffers to pooled buffers.
+ * 
+ * Creating a deflater allocates a large native state, that is freed only when
+ * the deflater is ended, so the deflaters are borrowed from a small bounded
+ * pool and reset when given back. A deflater given back to a full pool, or
+ * after the compressor has been closed, is ended. Since the deflaters are not
+ * tied to threads, a worker mode that creates a thread per request does not
+ * create a deflater per request.
+ * 
+ * Bodies shorter than the minimum size are not compressed, since the gzip
+ * framing and the CPU time would not be paid back.
+ */
+public class ResponseCompressor implements ResponseCompressorMXBean {
+    // the maximum number of idle deflaters kept for each coding
+    public static final int MAX_IDLE_DEFLATERS = 32;
+
+    private final int minBytes;
+    private final int level;
+
+    // the idle deflaters, raw for gzip and zlib for deflate
+    private final ArrayBlockingQueue<Deflater> gzipDeflaters = new ArrayBlockingQueue<>(MAX_IDLE_DEFLATERS);
+    private final ArrayBlockingQueue<Deflater> zlibDeflaters = new ArrayBlockingQueue<>(MAX_IDLE_DEFLATERS);
+    private volatile boolean closed = false;
+
+    private AtomicLong createdDeflaters = new AtomicLong(0);
+    private AtomicLong compressedResponses = new AtomicLong(0);
+    private AtomicLong uncompressedBytes = new AtomicLong(0);
+    private AtomicLong compressedBytes = new AtomicLong(0);
+    private AtomicLong compressionNanos = new AtomicLong(0);
+
+    /**
+     * Create a new response compressor
+     * 
+     * @param minBytes the minimum size of a body that is compressed
+     * @param level    the compression level, from 1 to 9, or
+     *                 Deflater.DEFAULT_COMPRESSION
+     */
+    public ResponseCompressor(int minBytes, int level) {
+        if (minBytes < 0 || level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException();
+        }
+        this.minBytes = minBytes;
+        this.level = level;
+    }
+
+    /**
+     * Check if a body has to be compressed
+     * 
+     * @param coding the negotiated coding
+     * @param length the length of the body
+     * @return true if the body has to be compressed
+     */
+    public boolean shouldCompress(ContentCoding coding, int length) {
+        return coding != ContentCoding.IDENTITY && length >= this.minBytes;
+    }
+
+    /**
+     * Compress a body. The buffers of the uncompressed body are given back to
+     * the pool
+     * 
+     * @param body   the buffers of the body, ready to be read
+     * @param coding GZIP or DEFLATE
+     * @param pool   the pool of the buffers
+     * @return the buffers of the compressed body, ready to be read
+     */
+    public ByteBuffer[] compress(ByteBuffer[] body, ContentCoding coding, BufferPool pool) {
+        var start = System.nanoTime();
+        var compressed = new PooledOutputStream(pool);
+        CompressingOutputStream stream = null;
+        try {
+            stream = compressingStream(compressed, coding);
+            for (var buffer : body) {
+                stream.write(buffer);
+            }
+            finishStream(stream);
+        } catch (IOException e) {
+            // a pooled stream never fails
+            compressed.release();
+            throw new UncheckedIOException(e);
+        } finally {
+            if (stream != null) {
+                releaseStream(stream);
+            }
+            for (var buffer : body) {
+                pool.release(buffer);
+            }
+        }
+        this.compressionNanos.addAndGet(System.nanoTime() - start);
+        return compressed.toBuffers();
+    }
+
+    /**
+     * Create a stream that compresses a streamed body, with a deflater
+     * borrowed from the pool. The stream has to be terminated by finishStream,
+     * and its deflater has to be given back by releaseStream, whether the body
+     * has been finished or not
+     * 
+     * @param out    the stream of the compressed body
+     * @param coding GZIP or DEFLATE
+     * @return the compressing stream
+     * @throws IOException if the stream header cannot be written
+     */
+    public CompressingOutputStream compressingStream(OutputStream out, ContentCoding coding) throws IOException {
+        var deflater = acquire(coding);
+        try {
+            return new CompressingOutputStream(out, coding, deflater);
+        } catch (IOException | RuntimeException e) {
+            release(coding, deflater);
+            throw e;
+        }
+    }
+
+    /**
+     * Terminate a stream created by compressingStream
+     * 
+     * @param stream the stream
+     * @throws IOException if the end of the body cannot be written
+     */
+    public void finishStream(CompressingOutputStream stream) throws IOException {
+        stream.finish();
+        record(stream);
+    }
+
+    /**
+     * Give back the deflater of a stream created by compressingStream, after
+     * which the stream cannot be written anymore. Releasing a stream twice has
+     * no effect
+     * 
+     * @param stream the stream
+     */
+    public void releaseStream(CompressingOutputStream stream) {
+        var deflater = stream.detachDeflater();
+        if (deflater != null) {
+            release(stream.getCoding(), deflater);
+        }
+    }
+
+    /**
+     * End the idle deflaters. The deflaters still borrowed are ended when they
+     * are given back
+     */
+    public void close() {
+        this.closed = true;
+        endIdle(this.gzipDeflaters);
+        endIdle(this.zlibDeflaters);
+    }
+
+    private Deflater acquire(ContentCoding coding) {
+        var gzip = coding == ContentCoding.GZIP;
+        var deflater = (gzip ? this.gzipDeflaters : this.zlibDeflaters).poll();
+        if (deflater == null) {
+            // raw deflate data for gzip, that has its own framing
+            deflater = new Deflater(this.level, gzip);
+            this.createdDeflaters.incrementAndGet();
+        }
+        return deflater;
+    }
+
+    private void release(ContentCoding coding, Deflater deflater) {
+        deflater.reset();
+        var idle = coding == ContentCoding.GZIP ? this.gzipDeflaters : this.zlibDeflaters;
+        if (this.closed || !idle.offer(deflater)) {
+            deflater.end();
+        } else if (this.closed && idle.remove(deflater)) {
+            // the compressor has been closed while the deflater was given back
+            deflater.end();
+        }
+    }
+
+    private static void endIdle(ArrayBlockingQueue<Deflater> idle) {
+        Deflater deflater;
+        while ((deflater = idle.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    private void record(CompressingOutputStream stream) {
+        this.compressedResponses.incrementAndGet();
+        this.uncompressedBytes.addAndGet(stream.getBytesIn());
+        this.compressedBytes.addAndGet(stream.getBytesOut());
+    }
+
+    public long getCreatedDeflaters() {
+        return createdDeflaters.get();
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public long getCompressionNanos() {
+        return compressionNanos.get();
+    }
+
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+}
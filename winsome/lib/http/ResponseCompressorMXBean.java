@@ -0,0 +1,45 @@
+package winsome.lib.http;
+
+/**
+ * Management interface of a response compressor, used to export the
+ * compression statistics, that show the bytes saved on the wire and the
+ * time spent compressing them
+ */
+public interface ResponseCompressorMXBean {
+    /**
+     * @return the number of deflaters created because the pool had no idle
+     *         one
+     */
+    public long getCreatedDeflaters();
+
+    /**
+     * @return the number of compressed responses, streamed ones included
+     */
+    public long getCompressedResponses();
+
+    /**
+     * @return the number of body bytes before the compression
+     */
+    public long getUncompressedBytes();
+
+    /**
+     * @return the number of body bytes after the compression
+     */
+    public long getCompressedBytes();
+
+    /**
+     * @return the total time spent compressing the bodies that are not
+     *         streamed, in nanoseconds
+     */
+    public long getCompressionNanos();
+
+    /**
+     * @return the minimum size of a body that is compressed, in bytes
+     */
+    public int getMinBytes();
+
+    /**
+     * @return the compression level, from 1 to 9, -1 for the default one
+     */
+    public int getLevel();
+}
@@ -0,0 +1,138 @@
+package winsome.lib.http;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import winsome.common.responses.ErrorResponse;
+import winsome.lib.nio.BufferPool;
+
+/**
+ * Immutable response whose bytes are encoded once, for the outcomes that do
+ * not depend on the request, like the bodiless status responses, the error
+ * responses with a fixed reason and the constant resources.
+ *
+ * The whole formatted message, one for each body format if the response has
+ * a body entity, is held by a read-only direct buffer that is shared by all
+ * the connections: a response is written from a duplicate of the shared
+ * buffer, so that it is neither encoded nor copied again. The body of a static
+ * response is never compressed, since it is meant to be small.
+ */
+public class StaticResponse {
+    // the maximum number of cached error responses, so that the cache stays
+    // bounded even if the reasons are not constant
+    private static final int MAX_CACHED_ERRORS = 256;
+
+    // the bodiless responses, one for each response code
+    private static final EnumMap<HTTPResponseCode, StaticResponse> bodiless = new EnumMap<>(HTTPResponseCode.class);
+    // the error responses, by response code and reason
+    private static final ConcurrentHashMap<String, StaticResponse> errors = new ConcurrentHashMap<>();
+
+    static {
+        for (var code : HTTPResponseCode.values()) {
+            bodiless.put(code, new StaticResponse(code, null));
+        }
+    }
+
+    private HTTPResponseCode responseCode;
+    // the body entity, kept to build an equivalent response if needed
+    private Object bodyEntity;
+    // the formatted message in each body format, read-only
+    private EnumMap<BodyFormat, ByteBuffer> encoded = new EnumMap<>(BodyFormat.class);
+
+    /**
+     * Create a new static response, encoding it in every body format
+     *
+     * @param responseCode the response code
+     * @param bodyEntity   the body entity, null if the response has no body
+     */
+    public StaticResponse(HTTPResponseCode responseCode, Object bodyEntity) {
+        if (responseCode == null) {
+            throw new NullPointerException();
+        }
+        this.responseCode = responseCode;
+        this.bodyEntity = bodyEntity;
+
+        // the encoder is given a pool without off-heap bytes, so that the
+        // encoded message is in heap buffers that are copied once into the
+        // shared direct buffer
+        var heapPool = new BufferPool(0);
+        for (var format : BodyFormat.values()) {
+            if (bodyEntity == null && !this.encoded.isEmpty()) {
+                // a bodiless response is the same in every format
+                this.encoded.put(format, this.encoded.get(BodyFormat.JSON));
+                continue;
+            }
+            var template = new HTTPResponse(responseCode);
+            if (bodyEntity != null) {
+                template.setBodyEntity(bodyEntity);
+            }
+            template.negotiateBodyFormat(format.getMediaType());
+            var buffers = HTTPResponseEncoder.encode(template, heapPool);
+
+            var length = 0;
+            for (var buffer : buffers) {
+                length += buffer.remaining();
+            }
+            var shared = ByteBuffer.allocateDirect(length);
+            for (var buffer : buffers) {
+                shared.put(buffer);
+            }
+            this.encoded.put(format, shared.flip().asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Get the bodiless static response with the given code
+     *
+     * @param code the response code
+     * @return the static response
+     */
+    public static StaticResponse of(HTTPResponseCode code) {
+        return bodiless.get(code);
+    }
+
+    /**
+     * Get the static error response with the given code and reason, encoding
+     * it the first time it is requested
+     *
+     * @param code   the response code
+     * @param reason the reason of the error
+     * @return the static response, null if too many error responses are
+     *         cached already
+     */
+    public static StaticResponse error(HTTPResponseCode code, String reason) {
+        var key = code.getCode() + " " + reason;
+        var response = errors.get(key);
+        if (response == null && errors.size() < MAX_CACHED_ERRORS) {
+            response = errors.computeIfAbsent(key, k -> new StaticResponse(code, ErrorResponse.from(reason)));
+        }
+        return response;
+    }
+
+    /**
+     * @return the response code
+     */
+    public HTTPResponseCode getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * @return the body entity, null if the response has no body
+     */
+    public Object getBodyEntity() {
+        return bodyEntity;
+    }
+
+    /**
+     * Get the formatted response, ready to be written. The returned buffer is
+     * a read-only view of the shared buffer, so it does not need to be given
+     * back to a pool
+     *
+     * @param format the negotiated format of the body
+     * @return the buffers containing the formatted response
+     */
+    public ByteBuffer[] buffers(BodyFormat format) {
+        return new ByteBuffer[] { this.encoded.get(format).duplicate() };
+    }
+}
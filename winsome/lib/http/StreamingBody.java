@@ -0,0 +1,24 @@
+package winsome.lib.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The producer of a body that is sent with the chunked transfer coding, as
+ * described in RFC 7230 section 4.1. The body is written as it is produced,
+ * so that it never has to be held entirely in memory
+ */
+@FunctionalInterface
+public interface StreamingBody {
+    /**
+     * Write the body to the given stream. The stream sends a chunk every time
+     * enough bytes have been written, and it may block while the client is not
+     * receiving them fast enough
+     * 
+     * @param out    the stream
+     * @param format the format of the body negotiated with the client
+     * @throws IOException if the body cannot be produced or the client has
+     *                     gone away
+     */
+    public void writeTo(OutputStream out, BodyFormat format) throws IOException;
+}
@@ -0,0 +1,96 @@
+package winsome.lib.json;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Registry of the JSON codecs shared by the server, the client and the
+ * persistence.
+ * An ObjectMapper is expensive to create and it caches the serializers and
+ * deserializers of the types it has seen, so a single mapper is created and
+ * an immutable, thread safe ObjectReader and ObjectWriter are built once for
+ * each type, the first time it is used, and then reused by every thread.
+ */
+public class JsonCodecs {
+    // the mapper from which all the readers and writers are built
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectWriter PRETTY_WRITER = MAPPER.writer(new DefaultPrettyPrinter());
+
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private JsonCodecs() {
+    }
+
+    /**
+     * Get the reader of a type
+     * 
+     * @param type the type
+     * @return the reader, built the first time the type is requested
+     */
+    public static ObjectReader readerFor(Class<?> type) {
+        return readers.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    /**
+     * Get the writer of a type
+     * 
+     * @param type the type
+     * @return the writer, built the first time the type is requested
+     */
+    public static ObjectWriter writerFor(Class<?> type) {
+        return writers.computeIfAbsent(type, MAPPER::writerFor);
+    }
+
+    /**
+     * Get the writer that indents its output, used for the files that are
+     * meant to be read by people
+     * 
+     * @return the writer
+     */
+    public static ObjectWriter prettyWriter() {
+        return PRETTY_WRITER;
+    }
+
+    /**
+     * Get the factory of the parsers and generators, for the callers that
+     * read or write JSON token by token
+     * 
+     * @return the factory
+     */
+    public static JsonFactory factory() {
+        return MAPPER.getFactory();
+    }
+
+    /**
+     * Deserialize a JSON string
+     * 
+     * @param <T>  the type of the value
+     * @param json the JSON string
+     * @param type the class of the value
+     * @return the value
+     * @throws IOException if the string is not a valid JSON representation of
+     *                     the type
+     */
+    public static <T> T read(String json, Class<T> type) throws IOException {
+        return readerFor(type).readValue(json);
+    }
+
+    /**
+     * Serialize a value into a JSON string
+     * 
+     * @param value the value
+     * @return the JSON string
+     * @throws JsonProcessingException if the value cannot be serialized
+     */
+    public static String write(Object value) throws JsonProcessingException {
+        return writerFor(value.getClass()).writeValueAsString(value);
+    }
+}
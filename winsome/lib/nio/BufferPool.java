@@ -0,0 +1,195 @@
+package winsome.lib.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe pool of direct byte buffers.
+ * The buffers are organized in size classes, that are the powers of two
+ * between MIN_CLASS_SIZE and MAX_CLASS_SIZE. A lease returns a buffer of the
+ * smallest class that can hold the requested number of bytes, and the buffer
+ * goes back to the free list of its class when it is released.
+ * 
+ * The total number of off-heap bytes allocated by the pool is capped: when the
+ * cap is reached, or when the requested size is larger than the largest
+ * class, the lease is served by a heap buffer that is simply left to the
+ * garbage collector when released.
+ * 
+ * A buffer must not be used after it has been released. Releasing a
+ * read-only buffer has no effect, so that the shared read-only views can be
+ * handled like the leased buffers.
+ */
+public class BufferPool implements BufferPoolMXBean {
+    // the smallest size class
+    public static final int MIN_CLASS_SIZE = 512;
+    // the largest size class
+    public static final int MAX_CLASS_SIZE = 256 * 1024;
+
+    // the free lists, one per size class
+    private List<ConcurrentLinkedQueue<ByteBuffer>> freeLists = new ArrayList<>();
+    // the maximum number of off-heap bytes
+    private final long maxBytes;
+
+    // statistics
+    private AtomicLong allocatedBytes = new AtomicLong(0);
+    private AtomicLong leaseCount = new AtomicLong(0);
+    private AtomicLong reuseCount = new AtomicLong(0);
+    private AtomicLong allocationCount = new AtomicLong(0);
+    private AtomicLong heapFallbackCount = new AtomicLong(0);
+    private AtomicLong leasedBuffers = new AtomicLong(0);
+    private AtomicLong freeBuffers = new AtomicLong(0);
+
+    /**
+     * Create a new buffer pool
+     * 
+     * @param maxBytes the maximum number of off-heap bytes that the pool can
+     *                 allocate
+     */
+    public BufferPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.maxBytes = maxBytes;
+        for (int size = MIN_CLASS_SIZE; size <= MAX_CLASS_SIZE; size *= 2) {
+            this.freeLists.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Lease a buffer that can hold at least minCapacity bytes.
+     * The returned buffer is cleared
+     * 
+     * @param minCapacity the minimum capacity
+     * @return the leased buffer
+     */
+    public ByteBuffer lease(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.leaseCount.incrementAndGet();
+
+        var sizeClass = sizeClassOf(minCapacity);
+        if (sizeClass == -1) {
+            // too large to be pooled
+            this.heapFallbackCount.incrementAndGet();
+            return ByteBuffer.allocate(minCapacity);
+        }
+        var classSize = MIN_CLASS_SIZE << sizeClass;
+
+        // try to reuse a free buffer of the size class
+        var buffer = this.freeLists.get(sizeClass).poll();
+        if (buffer != null) {
+            this.freeBuffers.decrementAndGet();
+            this.leasedBuffers.incrementAndGet();
+            this.reuseCount.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        // try to allocate a new direct buffer without exceeding the cap
+        var allocated = this.allocatedBytes.get();
+        while (allocated + classSize <= this.maxBytes) {
+            if (this.allocatedBytes.compareAndSet(allocated, allocated + classSize)) {
+                this.leasedBuffers.incrementAndGet();
+                this.allocationCount.incrementAndGet();
+                return ByteBuffer.allocateDirect(classSize);
+            }
+            allocated = this.allocatedBytes.get();
+        }
+
+        // the cap has been reached
+        this.heapFallbackCount.incrementAndGet();
+        return ByteBuffer.allocate(classSize);
+    }
+
+    /**
+     * Lease a buffer and copy the given bytes into it.
+     * The returned buffer is ready to be read
+     * 
+     * @param bytes the bytes to be copied
+     * @return the leased buffer
+     */
+    public ByteBuffer leaseCopyOf(byte[] bytes) {
+        var buffer = this.lease(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Give a leased buffer back to the pool
+     * 
+     * @param buffer the buffer, obtained by a lease on this pool
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+        // heap buffers are not pooled, and read-only buffers are views of
+        // buffers that are not owned by the pool
+        if (!buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        var sizeClass = sizeClassOf(buffer.capacity());
+        if (sizeClass == -1 || (MIN_CLASS_SIZE << sizeClass) != buffer.capacity()) {
+            throw new IllegalArgumentException();
+        }
+        buffer.clear();
+        this.leasedBuffers.decrementAndGet();
+        this.freeBuffers.incrementAndGet();
+        this.freeLists.get(sizeClass).add(buffer);
+    }
+
+    /**
+     * Get the size class that can hold the given number of bytes
+     * 
+     * @param capacity the number of bytes
+     * @return the index of the smallest class that can hold capacity bytes, -1
+     *         if capacity is larger than the largest class
+     */
+    private int sizeClassOf(int capacity) {
+        if (capacity > MAX_CLASS_SIZE) {
+            return -1;
+        }
+        var sizeClass = 0;
+        while ((MIN_CLASS_SIZE << sizeClass) < capacity) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    public long getLeaseCount() {
+        return this.leaseCount.get();
+    }
+
+    public long getReuseCount() {
+        return this.reuseCount.get();
+    }
+
+    public long getAllocationCount() {
+        return this.allocationCount.get();
+    }
+
+    public long getHeapFallbackCount() {
+        return this.heapFallbackCount.get();
+    }
+
+    public long getLeasedBuffers() {
+        return this.leasedBuffers.get();
+    }
+
+    public long getFreeBuffers() {
+        return this.freeBuffers.get();
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+}
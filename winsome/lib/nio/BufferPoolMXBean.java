@@ -0,0 +1,47 @@
+package winsome.lib.nio;
+
+/**
+ * Management interface of a buffer pool, used to export the pool statistics
+ */
+public interface BufferPoolMXBean {
+    /**
+     * @return the total number of leases
+     */
+    public long getLeaseCount();
+
+    /**
+     * @return the number of leases served by a buffer already in the pool
+     */
+    public long getReuseCount();
+
+    /**
+     * @return the number of leases that allocated a new direct buffer
+     */
+    public long getAllocationCount();
+
+    /**
+     * @return the number of leases served by a heap buffer, because the
+     *         requested size was too large or the off-heap cap was reached
+     */
+    public long getHeapFallbackCount();
+
+    /**
+     * @return the number of direct buffers currently leased
+     */
+    public long getLeasedBuffers();
+
+    /**
+     * @return the number of direct buffers currently free in the pool
+     */
+    public long getFreeBuffers();
+
+    /**
+     * @return the total number of off-heap bytes allocated by the pool
+     */
+    public long getAllocatedBytes();
+
+    /**
+     * @return the maximum number of off-heap bytes that the pool can allocate
+     */
+    public long getMaxBytes();
+}
@@ -0,0 +1,99 @@
+package winsome.lib.nio;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Output stream that writes into a chain of buffers leased from a buffer pool.
+ * The first buffer is small and every following one doubles in size up to
+ * MAX_CHUNK_SIZE, so that small contents use little memory and large
+ * contents use few buffers.
+ * 
+ * When the writing is done, the buffers are taken with toBuffers, and they
+ * must be given back to the pool by the new owner.
+ */
+public class PooledOutputStream extends OutputStream {
+    // the maximum size of a single buffer of the chain
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    // the pool of the buffers
+    private BufferPool pool;
+    // the buffers written so far
+    private ArrayList<ByteBuffer> buffers = new ArrayList<>();
+    // the buffer that is being written
+    private ByteBuffer current = null;
+    // the number of bytes written
+    private int size = 0;
+
+    public PooledOutputStream(BufferPool pool) {
+        if (pool == null) {
+            throw new NullPointerException();
+        }
+        this.pool = pool;
+    }
+
+    @Override
+    public void write(int b) {
+        if (this.current == null || !this.current.hasRemaining()) {
+            nextBuffer();
+        }
+        this.current.put((byte) b);
+        this.size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            if (this.current == null || !this.current.hasRemaining()) {
+                nextBuffer();
+            }
+            var toWrite = Math.min(len, this.current.remaining());
+            this.current.put(b, off, toWrite);
+            off += toWrite;
+            len -= toWrite;
+            this.size += toWrite;
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Take the written buffers, ready to be read. After this call the stream
+     * must not be used anymore and the caller owns the buffers
+     * 
+     * @return the buffers
+     */
+    public ByteBuffer[] toBuffers() {
+        var out = new ByteBuffer[this.buffers.size()];
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = this.buffers.get(i).flip();
+        }
+        this.buffers.clear();
+        this.current = null;
+        return out;
+    }
+
+    /**
+     * Give all the written buffers back to the pool, discarding the content
+     */
+    public void release() {
+        for (var buffer : this.buffers) {
+            this.pool.release(buffer);
+        }
+        this.buffers.clear();
+        this.current = null;
+    }
+
+    private void nextBuffer() {
+        var capacity = this.current == null ? BufferPool.MIN_CLASS_SIZE
+                : Math.min(this.current.capacity() * 2, MAX_CHUNK_SIZE);
+        this.current = this.pool.lease(capacity);
+        this.buffers.add(this.current);
+    }
+}
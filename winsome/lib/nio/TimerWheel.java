@@ -0,0 +1,186 @@
+package winsome.lib.nio;
+
+import java.util.ArrayList;
+
+/**
+ * A hashed timer wheel, that keeps a large number of timeouts with a constant
+ * cost for scheduling and cancelling them.
+ * Time is divided in ticks of fixed length, and every timeout is put in the
+ * slot of the tick in which it expires, modulo the number of slots. The wheel
+ * is advanced by its owner, typically after every select of a selector loop,
+ * and only the slots of the elapsed ticks are examined.
+ * 
+ * The wheel is not thread safe: it must be used by the thread that owns it.
+ */
+public class TimerWheel {
+    /**
+     * A scheduled task, that can be cancelled until it has expired
+     */
+    public static class Timeout {
+        // the task to run on expiration
+        private Runnable task;
+        // the tick in which the timeout expires
+        private long deadlineTick;
+        // the wheel that holds the timeout, null if expired or cancelled
+        private TimerWheel wheel;
+        // links of the slot's list
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return true if the timeout has neither expired nor been cancelled
+         */
+        public boolean isPending() {
+            return this.wheel != null;
+        }
+
+        /**
+         * Cancel the timeout, if it is still pending
+         */
+        public void cancel() {
+            if (this.wheel != null) {
+                this.wheel.remove(this);
+            }
+        }
+    }
+
+    // the length of a tick
+    private final long tickMillis;
+    // the origin of the wheel's time
+    private final long startMillis;
+    // the heads of the slots' lists
+    private final Timeout[] slots;
+    // the last tick that has been processed
+    private long currentTick = 0;
+    // the number of pending timeouts
+    private int size = 0;
+
+    /**
+     * Create a new timer wheel
+     * 
+     * @param slotsNumber the number of slots of the wheel
+     * @param tickMillis  the length of a tick in milliseconds, that is the
+     *                    resolution of the timeouts
+     * @param nowMillis   the current time in milliseconds
+     */
+    public TimerWheel(int slotsNumber, long tickMillis, long nowMillis) {
+        if (slotsNumber <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.slots = new Timeout[slotsNumber];
+        this.tickMillis = tickMillis;
+        this.startMillis = nowMillis;
+    }
+
+    /**
+     * Schedule a task. The task is run by advance, in the first call that
+     * happens after the delay has elapsed, rounded up to the tick
+     * 
+     * @param task        the task
+     * @param delayMillis the delay in milliseconds
+     * @param nowMillis   the current time in milliseconds
+     * @return the scheduled timeout
+     */
+    public Timeout schedule(Runnable task, long delayMillis, long nowMillis) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        var elapsed = nowMillis + delayMillis - this.startMillis;
+        var deadlineTick = Math.max(this.currentTick + 1, (elapsed + this.tickMillis - 1) / this.tickMillis);
+
+        var timeout = new Timeout(task, deadlineTick);
+        var slot = (int) (deadlineTick % this.slots.length);
+        timeout.wheel = this;
+        timeout.next = this.slots[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        this.slots[slot] = timeout;
+        this.size++;
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel to the current time, running the tasks of all the
+     * expired timeouts
+     * 
+     * @param nowMillis the current time in milliseconds
+     */
+    public void advance(long nowMillis) {
+        var targetTick = (nowMillis - this.startMillis) / this.tickMillis;
+        if (targetTick <= this.currentTick) {
+            return;
+        }
+
+        // every slot has to be examined at most once, even if more than a
+        // whole round of the wheel has elapsed
+        var ticks = Math.min(targetTick - this.currentTick, this.slots.length);
+        ArrayList<Timeout> expired = null;
+        for (long tick = this.currentTick + 1; tick <= this.currentTick + ticks; ++tick) {
+            var timeout = this.slots[(int) (tick % this.slots.length)];
+            while (timeout != null) {
+                var next = timeout.next;
+                // the slot also holds the timeouts of the next rounds
+                if (timeout.deadlineTick <= targetTick) {
+                    remove(timeout);
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        this.currentTick = targetTick;
+
+        // the tasks are run after the wheel is consistent, since they could
+        // schedule new timeouts
+        if (expired != null) {
+            for (var timeout : expired) {
+                timeout.task.run();
+            }
+        }
+    }
+
+    /**
+     * Get how long the owner can wait before advancing the wheel again
+     * 
+     * @param nowMillis the current time in milliseconds
+     * @return the milliseconds until the end of the current tick, 0 if there
+     *         are no pending timeouts and the owner can wait indefinitely
+     */
+    public long millisToNextTick(long nowMillis) {
+        if (this.size == 0) {
+            return 0;
+        }
+        var nextTickMillis = this.startMillis + (this.currentTick + 1) * this.tickMillis;
+        return Math.max(1, nextTickMillis - nowMillis);
+    }
+
+    /**
+     * @return the number of pending timeouts
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private void remove(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            this.slots[(int) (timeout.deadlineTick % this.slots.length)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.wheel = null;
+        this.size--;
+    }
+}
@@ -0,0 +1,17 @@
+package winsome.lib.router;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Methods annotated with this annotation are executed by the workers of the
+ * given route class. Methods without this annotation belong to the
+ * LIGHT_READ class
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Bulkhead {
+    public RouteClass value();
+}
@@ -0,0 +1,17 @@
+package winsome.lib.router;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Methods annotated with this annotation represent functionalities that do
+ * not block and do very little work, so that they can be executed directly
+ * by the thread that serves the connection IO instead of being handed to a
+ * worker thread
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface NonBlocking {
+}
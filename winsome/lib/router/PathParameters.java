@@ -0,0 +1,37 @@
+package winsome.lib.router;
+
+/**
+ * Class that holds the parameters extracted from the path of a request while
+ * it is matched against the route tree. The parameters are stored by their
+ * position in the path template, the integer ones unboxed
+ */
+class PathParameters {
+    private int[] ints;
+    private String[] strings;
+
+    /**
+     * Create a new holder
+     *
+     * @param capacity the maximum number of parameters of a path
+     */
+    PathParameters(int capacity) {
+        this.ints = new int[capacity];
+        this.strings = new String[capacity];
+    }
+
+    void setInt(int index, int value) {
+        this.ints[index] = value;
+    }
+
+    void setString(int index, String value) {
+        this.strings[index] = value;
+    }
+
+    int getInt(int index) {
+        return this.ints[index];
+    }
+
+    String getString(int index) {
+        return this.strings[index];
+    }
+}
@@ -0,0 +1,17 @@
+package winsome.lib.router;
+
+/**
+ * The classes of routes, grouped by the kind of work they do. The requests of
+ * each class are executed by a separate set of workers, so that a burst of
+ * expensive requests of one class does not starve the others
+ */
+public enum RouteClass {
+    // cheap reads of a few entities
+    LIGHT_READ,
+    // reads that walk many entities and serialize large responses
+    HEAVY_READ,
+    // operations that modify the state
+    WRITE,
+    // operations that wait for an external service
+    EXTERNAL_IO
+}
@@ -0,0 +1,122 @@
+package winsome.lib.router;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import winsome.common.requests.RequestModel;
+import winsome.lib.http.HTTPResponse;
+
+/**
+ * Class that describes a bound route. It is computed once, when the route is
+ * bound, so that a request is dispatched without looking at the annotations
+ * or at the parameters of the bound method again.
+ *
+ * The bound method is invoked through a method handle adapted to the fixed
+ * type (String, PathParameters, RequestModel) -> HTTPResponse: every
+ * parameter of the method is bound either to the authenticated user, to a
+ * path parameter, that is read unboxed if it is an integer, or to the
+ * deserialized body. The invocation needs neither reflection nor an array of
+ * boxed arguments.
+ */
+class RouteDescriptor {
+    // the type of every invoker
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(HTTPResponse.class, String.class,
+            PathParameters.class, RequestModel.class);
+    // the readers of the path parameters, taking the index of the parameter
+    private static final MethodHandle GET_INT;
+    private static final MethodHandle GET_STRING;
+
+    static {
+        var lookup = MethodHandles.lookup();
+        try {
+            GET_INT = lookup.findVirtual(PathParameters.class, "getInt",
+                    MethodType.methodType(int.class, int.class));
+            GET_STRING = lookup.findVirtual(PathParameters.class, "getString",
+                    MethodType.methodType(String.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private MethodHandle invoker;
+    private boolean authenticate;
+    // the type of the body, null if the body is not deserialized
+    private Class<? extends RequestModel> bodyType;
+    private boolean nonBlocking;
+    private RouteClass routeClass;
+
+    /**
+     * Describe a bound method. The parameters of the method must have already
+     * been validated against its annotations and its path template
+     *
+     * @param target the object on which the method is invoked
+     * @param action the bound method
+     * @throws IllegalAccessException if the method is not accessible
+     */
+    RouteDescriptor(Object target, Method action) throws IllegalAccessException {
+        this.authenticate = action.isAnnotationPresent(Authenticate.class);
+        if (action.isAnnotationPresent(DeserializeRequestBody.class)) {
+            this.bodyType = action.getAnnotation(DeserializeRequestBody.class).value();
+        }
+        this.nonBlocking = action.isAnnotationPresent(NonBlocking.class);
+        this.routeClass = action.isAnnotationPresent(Bulkhead.class)
+                ? action.getAnnotation(Bulkhead.class).value()
+                : RouteClass.LIGHT_READ;
+
+        // bind each parameter of the method to one of the invoker arguments:
+        // 0 is the authenticated user, 1 the path parameters and 2 the body
+        var parameterTypes = action.getParameterTypes();
+        var binders = new MethodHandle[parameterTypes.length];
+        var reorder = new int[parameterTypes.length];
+        var pathIndex = 0;
+        for (int i = 0; i < parameterTypes.length; ++i) {
+            if (this.authenticate && i == 0) {
+                reorder[i] = 0;
+            } else if (this.bodyType != null && i == parameterTypes.length - 1) {
+                binders[i] = MethodHandles.identity(this.bodyType)
+                        .asType(MethodType.methodType(this.bodyType, RequestModel.class));
+                reorder[i] = 2;
+            } else {
+                var getter = parameterTypes[i] == int.class ? GET_INT : GET_STRING;
+                binders[i] = MethodHandles.insertArguments(getter, 1, pathIndex++);
+                reorder[i] = 1;
+            }
+        }
+
+        var handle = MethodHandles.lookup().unreflect(action).bindTo(target);
+        handle = MethodHandles.filterArguments(handle, 0, binders);
+        this.invoker = MethodHandles.permuteArguments(handle, INVOKER_TYPE, reorder);
+    }
+
+    /**
+     * Invoke the bound method
+     *
+     * @param authUser       the authenticated user, null if the route is not
+     *                       authenticated
+     * @param pathParameters the parameters extracted from the path
+     * @param body           the deserialized body, null if there is none
+     * @return the response of the bound method
+     * @throws Throwable anything thrown by the bound method
+     */
+    HTTPResponse invoke(String authUser, PathParameters pathParameters, RequestModel body) throws Throwable {
+        return (HTTPResponse) this.invoker.invokeExact(authUser, pathParameters, body);
+    }
+
+    boolean isAuthenticated() {
+        return authenticate;
+    }
+
+    Class<? extends RequestModel> getBodyType() {
+        return bodyType;
+    }
+
+    boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    RouteClass getRouteClass() {
+        return routeClass;
+    }
+}
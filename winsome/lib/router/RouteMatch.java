@@ -0,0 +1,74 @@
+package winsome.lib.router;
+
+import winsome.lib.http.HTTPRequest;
+import winsome.lib.http.HTTPResponse;
+
+/**
+ * Class that represent the result of the resolution of a request by the
+ * router. It is either a bound action to be invoked, together with the
+ * parameters of the matched path and the authenticated user, or a response that is already
+ * known without invoking any action, like NOT FOUND or UNAUTHORIZED
+ */
+public class RouteMatch {
+    private HTTPRequest request;
+    private RouteDescriptor route;
+    private PathParameters pathParameters;
+    private String authUser;
+    private HTTPResponse response;
+
+    RouteMatch(HTTPRequest request, RouteDescriptor route, PathParameters pathParameters, String authUser) {
+        this.request = request;
+        this.route = route;
+        this.pathParameters = pathParameters;
+        this.authUser = authUser;
+    }
+
+    RouteMatch(HTTPRequest request, HTTPResponse response) {
+        this.request = request;
+        this.response = response;
+    }
+
+    /**
+     * Check if the request can be completed without blocking, that is if the
+     * response is already known or if the bound action is annotated as
+     * NonBlocking
+     * 
+     * @return true if the request can be completed without blocking
+     */
+    public boolean isNonBlocking() {
+        return this.response != null || this.route.isNonBlocking();
+    }
+
+    /**
+     * Get the class of the matched route, that determines the workers that
+     * execute the request
+     * 
+     * @return the route class
+     */
+    public RouteClass getRouteClass() {
+        if (this.route == null) {
+            return RouteClass.LIGHT_READ;
+        }
+        return this.route.getRouteClass();
+    }
+
+    public HTTPRequest getRequest() {
+        return request;
+    }
+
+    RouteDescriptor getRoute() {
+        return route;
+    }
+
+    PathParameters getPathParameters() {
+        return pathParameters;
+    }
+
+    String getAuthUser() {
+        return authUser;
+    }
+
+    HTTPResponse getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,222 @@
+package winsome.lib.router;
+
+import java.util.Arrays;
+
+/**
+ * Class that represents the routes of an HTTP method as a tree of path
+ * segments.
+ * Every node has the literal segments that can follow it and at most one
+ * integer and one string parameter segment, so that a path is matched by
+ * walking the tree one segment at a time, instead of trying every route in
+ * turn. The parameters are extracted while walking, with the same syntax the
+ * path templates have always had: an integer is a sequence of digits, a string
+ * is a sequence of word characters.
+ *
+ * Literal segments are tried first, then the integer parameter and finally
+ * the string parameter, backtracking if the rest of the path does not match.
+ *
+ * Example: the templates
+ * /posts, /posts/{idPost} and /posts/{idPost}/rates
+ * become the tree
+ * posts -> {int} -> rates
+ * with a bound route on each of the three nodes.
+ */
+class RouteTree {
+    private static class Node {
+        // the literal segments that can follow this node, with their nodes
+        private String[] literals = new String[0];
+        private Node[] literalNodes = new Node[0];
+        private Node intNode = null;
+        private Node stringNode = null;
+        // the route bound to the path that ends in this node, if any
+        private RouteDescriptor route = null;
+
+        private Node literalChild(String literal) {
+            for (int i = 0; i < this.literals.length; ++i) {
+                if (this.literals[i].equals(literal)) {
+                    return this.literalNodes[i];
+                }
+            }
+            var child = new Node();
+            this.literals = Arrays.copyOf(this.literals, this.literals.length + 1);
+            this.literalNodes = Arrays.copyOf(this.literalNodes, this.literalNodes.length + 1);
+            this.literals[this.literals.length - 1] = literal;
+            this.literalNodes[this.literalNodes.length - 1] = child;
+            return child;
+        }
+    }
+
+    private Node root = new Node();
+    // the maximum number of parameters of a path
+    private int maxParameters = 0;
+
+    /**
+     * Add a route to the tree. The template must be well formed, and it must
+     * have a parameter for each one of the given types
+     *
+     * @param template       the path template, like /posts/{idPost}
+     * @param parameterTypes the types of the path parameters, in path order,
+     *                       either int or String
+     * @param route          the bound route
+     * @return false if another route is bound to the same path
+     */
+    boolean add(String template, Class<?>[] parameterTypes, RouteDescriptor route) {
+        var node = this.root;
+        var parameterIndex = 0;
+        for (var segment : template.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.startsWith("{")) {
+                if (parameterTypes[parameterIndex++] == int.class) {
+                    if (node.intNode == null) {
+                        node.intNode = new Node();
+                    }
+                    node = node.intNode;
+                } else {
+                    if (node.stringNode == null) {
+                        node.stringNode = new Node();
+                    }
+                    node = node.stringNode;
+                }
+            } else {
+                node = node.literalChild(segment);
+            }
+        }
+        if (node.route != null) {
+            return false;
+        }
+        node.route = route;
+        this.maxParameters = Math.max(this.maxParameters, parameterIndex);
+        return true;
+    }
+
+    /**
+     * Create a holder big enough for the parameters of any path of the tree
+     *
+     * @return the holder
+     */
+    PathParameters newParameters() {
+        return new PathParameters(this.maxParameters);
+    }
+
+    /**
+     * Find the route bound to a path
+     *
+     * @param path       the path of the request
+     * @param parameters the holder of the extracted path parameters
+     * @return the bound route, null if no route matches the path
+     */
+    RouteDescriptor find(String path, PathParameters parameters) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        // the root path has no segments
+        if (path.length() == 1) {
+            return this.root.route;
+        }
+        return find(this.root, path, 0, parameters, 0);
+    }
+
+    /**
+     * Match the rest of a path from a node
+     *
+     * @param node           the node
+     * @param path           the path
+     * @param start          the offset of the slash that precedes the next
+     *                       segment, the length of the path if there are no
+     *                       more segments
+     * @param parameters     the holder of the extracted path parameters
+     * @param parameterIndex the index of the next path parameter
+     * @return the bound route, null if the rest of the path does not match
+     */
+    private static RouteDescriptor find(Node node, String path, int start, PathParameters parameters,
+            int parameterIndex) {
+        if (start == path.length()) {
+            return node.route;
+        }
+        if (path.charAt(start) != '/') {
+            return null;
+        }
+        var segmentStart = start + 1;
+        var segmentEnd = path.indexOf('/', segmentStart);
+        if (segmentEnd == -1) {
+            segmentEnd = path.length();
+        }
+        var length = segmentEnd - segmentStart;
+        if (length == 0) {
+            return null;
+        }
+
+        RouteDescriptor route;
+        for (int i = 0; i < node.literals.length; ++i) {
+            var literal = node.literals[i];
+            if (literal.length() == length && path.regionMatches(segmentStart, literal, 0, length)) {
+                route = find(node.literalNodes[i], path, segmentEnd, parameters, parameterIndex);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+
+        if (node.intNode != null) {
+            var value = parseInt(path, segmentStart, segmentEnd);
+            if (value >= 0) {
+                parameters.setInt(parameterIndex, value);
+                route = find(node.intNode, path, segmentEnd, parameters, parameterIndex + 1);
+                if (route != null) {
+                    return route;
+                }
+            }
+        }
+
+        if (node.stringNode != null && isWord(path, segmentStart, segmentEnd)) {
+            parameters.setString(parameterIndex, path.substring(segmentStart, segmentEnd));
+            return find(node.stringNode, path, segmentEnd, parameters, parameterIndex + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Parse a segment made of digits
+     *
+     * @param path  the path
+     * @param start the beginning of the segment
+     * @param end   the end of the segment
+     * @return the value, -1 if the segment is not made of digits or if the
+     *         value does not fit an int
+     */
+    private static int parseInt(String path, int start, int end) {
+        var value = 0;
+        for (int i = start; i < end; ++i) {
+            var c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            if (value > (Integer.MAX_VALUE - (c - '0')) / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Check if a segment is made of word characters, that are letters, digits
+     * and underscores
+     *
+     * @param path  the path
+     * @param start the beginning of the segment
+     * @param end   the end of the segment
+     * @return true if the segment is a word
+     */
+    private static boolean isWord(String path, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            var c = path.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,18 +1,20 @@
 package winsome.lib.router;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 import winsome.common.requests.RequestModel;
+import winsome.lib.binary.BinaryFormatException;
+import winsome.lib.http.BodyFormat;
+import winsome.lib.http.EntityTag;
+import winsome.lib.http.HTTPHeaders;
 import winsome.lib.http.HTTPMethod;
 import winsome.lib.http.HTTPRequest;
 import winsome.lib.http.HTTPResponse;
@@ -21,32 +23,30 @@ import winsome.lib.http.HTTPResponseCode;
 public class Router {
     private Object boundObject;
     private AuthenticationInterface authInterface;
-    private HashMap<RESTRoute, Method> bindings = new HashMap<>();
-    private HashMap<Method, Class<? extends RequestModel>> deserializationMap = new HashMap<>();
+    // the routes of each HTTP method
+    private EnumMap<HTTPMethod, RouteTree> routes = new EnumMap<>(HTTPMethod.class);
 
     public Router(Object actionsObject, AuthenticationInterface authInterface) throws InvalidRouteAnnotationException {
         if (actionsObject == null || authInterface == null) {
             throw new NullPointerException();
         }
 
+        this.boundObject = actionsObject;
+        this.authInterface = authInterface;
         if (!validateAnnotationsAndBind(actionsObject.getClass())) {
             throw new InvalidRouteAnnotationException();
         }
-        this.boundObject = actionsObject;
-        this.authInterface = authInterface;
     }
 
     /**
      * Validate annotations and bind path to actions.
      * Every method of the class of the actionClass is checked for the Route
      * annotation. If it has one the path contained is matched against the method's
-     * parameters. The path template is transformed into a regex that matches all
-     * the instances of that template. The types are given by the method's parameter
-     * types. Only the integer and string types are supported. The REST method
-     * is also stored.
+     * parameters. The types of the path parameters are given by the method's
+     * parameter types. Only the integer and string types are supported.
      * 
-     * The generated regex is then put in the bindings map, together with the
-     * matching method
+     * The path template is then added to the route tree of its REST method,
+     * together with the matching method
      * 
      * Example:
      * 
@@ -55,11 +55,8 @@ public class Router {
      * 
      * id is bound to a
      * n is bound to b
-     * the generated regex that matches all the
-     * istances of the template is
-     * /foo/(\d+)/bar/(\d+)
-     * the entry <</foo/(\d+)/bar/(\d+), POST>, baz> is
-     * added to the bindings map
+     * the path foo -> {int} -> bar -> {int} is added to
+     * the POST route tree, ending with baz
      * 
      * @param actionsClass the Route annotated class
      * @return true if all the matching and bindings succeded, false otherwise
@@ -102,8 +99,8 @@ public class Router {
 
                 // create a new matcher for the parameters in the path
                 Matcher parameterMatcher = pathParameterPattern.matcher(path);
-                // initialize the output regex
-                String synthethizedRegex = path;
+                // the types of the path parameters, in path order
+                var parameterTypes = new ArrayList<Class<?>>();
                 int i = 0;
 
                 // the first argument is the username, if the Authenticate annotation
@@ -131,14 +128,9 @@ public class Router {
                         return false;
                     }
 
-                    // create a new matcher to replace the parameter in the output regex
-                    Matcher replaceParameterMatcher = pathParameterPattern.matcher(synthethizedRegex);
-
-                    // replace the template parameter to a regex choosing from the input type
-                    if (methodParameters[i].getType() == int.class) {
-                        synthethizedRegex = replaceParameterMatcher.replaceFirst("(\\\\d+)");
-                    } else if (methodParameters[i].getType() == String.class) {
-                        synthethizedRegex = replaceParameterMatcher.replaceFirst("(\\\\w+)");
+                    // the input type chooses the segments that match the parameter
+                    if (methodParameters[i].getType() == int.class || methodParameters[i].getType() == String.class) {
+                        parameterTypes.add(methodParameters[i].getType());
                     } else {
                         System.out.println(
                                 "Router binding error: unsupported type " + methodParameters[i].getType().toString());
@@ -163,7 +155,6 @@ public class Router {
                                         + methodParameters[i].getType().toString());
                         return false;
                     }
-                    this.deserializationMap.put(classMethod, annotation.value());
                     i++;
                 }
 
@@ -175,103 +166,144 @@ public class Router {
                     return false;
                 }
 
-                // finally put the output regex and method in the bindings map, together with
-                // the mapped method
-                var route = new RESTRoute(Pattern.compile(synthethizedRegex), restMethod);
-                this.bindings.put(route, classMethod);
+                // describe the route once, so that its requests are dispatched without
+                // reflection
+                RouteDescriptor route;
+                try {
+                    route = new RouteDescriptor(this.boundObject, classMethod);
+                } catch (IllegalAccessException e) {
+                    System.out.println("Router binding error: the method " + classMethod.getName()
+                            + " is not accessible");
+                    return false;
+                }
+
+                // finally add the path to the route tree of the REST method, together
+                // with the route of the mapped method
+                var tree = this.routes.computeIfAbsent(restMethod, m -> new RouteTree());
+                if (!tree.add(path, parameterTypes.toArray(new Class<?>[0]), route)) {
+                    System.out.println("Router binding error: the path " + path + " is bound to more than one method");
+                    return false;
+                }
             }
         }
         return true;
     }
 
     /**
-     * Call bound action from path.
-     * Match the request with a route path and invoke the corresponding method.
-     * The invocation is done on the object that has been passed to the constructor.
+     * Resolve a request.
+     * Match the request with a route path and authenticate it if the bound
+     * method requires it. The result is either the bound method to invoke or
+     * a response that is already known, like NOT FOUND if no route matches
+     * or UNAUTHORIZED if the authentication fails.
      * 
-     * @param path the api path instance
-     * @return the response to send to the client
+     * @param request the request
+     * @return the resolution of the request
      */
-    public HTTPResponse callAction(HTTPRequest request) {
-        var path = request.getPath();
-        var method = request.getMethod();
-
-        // for each entry in the bindings map
-        for (RESTRoute route : this.bindings.keySet()) {
-
-            var requestInstancePattern = route.getPattern();
-            // check if the request methods match, if not skip the iteration
-            if (route.getMethod() != method) {
-                continue;
-            }
-
-            // try to match the path to the request pattern
-            Matcher requestInstanceMatcher = requestInstancePattern.matcher(path);
-            if (requestInstanceMatcher.matches()) {
-                // get the bound method for the request
-                Method toCallAction = this.bindings.get(route);
-
-                RequestModel deserializedBody = null;
-
-                boolean deserializeBody = false;
-                boolean authenticate = false;
-                String authUser = null;
-
+    public RouteMatch resolve(HTTPRequest request) {
+        // walk the route tree of the request method, extracting the path
+        // parameters
+        var tree = this.routes.get(request.getMethod());
+        if (tree != null) {
+            var pathParameters = tree.newParameters();
+            var route = tree.find(request.getPath(), pathParameters);
+            if (route != null) {
                 // do authentication if required
-                if (toCallAction.isAnnotationPresent(Authenticate.class)) {
-                    authenticate = true;
+                String authUser = null;
+                if (route.isAuthenticated()) {
                     authUser = authenticateRequest(request);
                     if (authUser == null) {
-                        return new HTTPResponse(HTTPResponseCode.UNAUTHORIZED);
+                        return new RouteMatch(request, HTTPResponse.emptyResponse(HTTPResponseCode.UNAUTHORIZED));
                     }
                 }
+                return new RouteMatch(request, route, pathParameters, authUser);
+            }
+        }
 
-                if (this.deserializationMap.containsKey(toCallAction)) {
-                    deserializeBody = true;
-                    var mapper = new ObjectMapper();
-                    try {
-                        deserializedBody = mapper.readValue(request.getBody(),
-                                this.deserializationMap.get(toCallAction));
-                    } catch (JsonParseException | JsonMappingException e) {
-                        return new HTTPResponse(HTTPResponseCode.BAD_REQUEST);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        return new HTTPResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
-                    }
-                }
+        // if no route has been found return 404 not found
+        return new RouteMatch(request, HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND));
+    }
 
-                // bind the actual data in the path to the method parameter
-                // according to their types
-                Parameter[] methodParameters = toCallAction.getParameters();
-                Object[] toCallParams = new Object[methodParameters.length];
-                int groupOffset = authenticate ? 0 : 1;
-                for (int i = 0; i < methodParameters.length; ++i) {
-                    if (authenticate && i == 0) {
-                        toCallParams[i] = authUser;
-                    } else if (methodParameters[i].getType() == int.class) {
-                        toCallParams[i] = Integer.parseInt(requestInstanceMatcher.group(i + groupOffset));
-                    } else if (methodParameters[i].getType() == String.class) {
-                        toCallParams[i] = requestInstanceMatcher.group(i + groupOffset);
-                    }
-                    if (deserializeBody && i == methodParameters.length - 1) {
-                        toCallParams[i] = deserializedBody;
-                    }
-                }
+    /**
+     * Call bound action from path.
+     * Match the request with a route path and invoke the corresponding method.
+     * The invocation is done on the object that has been passed to the constructor.
+     * 
+     * @param request the request
+     * @return the response to send to the client
+     */
+    public HTTPResponse callAction(HTTPRequest request) {
+        return callAction(resolve(request));
+    }
 
-                // finally invoke the method
-                try {
-                    // the cast to RESTResponse is safe since the return type of
-                    // the method has been checked in the validation phase
-                    return (HTTPResponse) toCallAction.invoke(this.boundObject, toCallParams);
-                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                    e.printStackTrace();
-                    return new HTTPResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
-                }
+    /**
+     * Call the bound action of a resolved request.
+     * The invocation is done on the object that has been passed to the constructor.
+     * 
+     * @param match the resolution of the request
+     * @return the response to send to the client
+     */
+    public HTTPResponse callAction(RouteMatch match) {
+        if (match.getResponse() != null) {
+            return match.getResponse();
+        }
+
+        var request = match.getRequest();
+        var route = match.getRoute();
+
+        RequestModel deserializedBody = null;
+        if (route.getBodyType() != null) {
+            // the body is in the format declared by its Content-Type header
+            var bodyBytes = request.getBodyBytes();
+            if (bodyBytes == null) {
+                return HTTPResponse.emptyResponse(HTTPResponseCode.BAD_REQUEST);
+            }
+            var format = BodyFormat.fromContentType(request.getHeader(HTTPHeaders.CONTENT_TYPE));
+            try {
+                deserializedBody = format.decode(bodyBytes, route.getBodyType());
+            } catch (JsonProcessingException | BinaryFormatException e) {
+                // a malformed body, including one that exceeds the limits of
+                // the JSON parser
+                return HTTPResponse.emptyResponse(HTTPResponseCode.BAD_REQUEST);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return HTTPResponse.emptyResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
             }
         }
 
-        // if no route has been found return 404 not found
-        return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+        // finally invoke the method, its invoker binds the authenticated user,
+        // the path parameters and the body to the method parameters
+        try {
+            var response = route.invoke(match.getAuthUser(), match.getPathParameters(), deserializedBody);
+            return checkNotModified(request, response);
+        } catch (Throwable e) {
+            // anything thrown by the bound method is answered as a server error,
+            // as it was when the method was invoked reflectively
+            e.printStackTrace();
+            return HTTPResponse.emptyResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Answer a conditional GET with NOT MODIFIED if the entity tag of the
+     * response matches the If-None-Match header of the request. Since the body
+     * is serialized only when the response is encoded, the discarded body is
+     * never serialized. The encoder gives the NOT MODIFIED response the same
+     * validator headers as the full response, once they are negotiated
+     * 
+     * @param request  the request
+     * @param response the response of the bound action
+     * @return NOT MODIFIED if the client already has the body, the response
+     *         otherwise
+     */
+    private HTTPResponse checkNotModified(HTTPRequest request, HTTPResponse response) {
+        if (request.getMethod() != HTTPMethod.GET || response.getResponseCode() != HTTPResponseCode.OK) {
+            return response;
+        }
+        var tag = response.getHeader(HTTPHeaders.ETAG);
+        if (!EntityTag.matches(request.getHeader(HTTPHeaders.IF_NONE_MATCH), tag)) {
+            return response;
+        }
+        return new HTTPResponse(HTTPResponseCode.NOT_MODIFIED).setHeader(HTTPHeaders.ETAG, tag);
     }
 
     /**
@@ -282,8 +314,7 @@ public class Router {
      *         otherwise
      */
     private String authenticateRequest(HTTPRequest request) {
-        var headers = request.getHeaders();
-        var authString = headers.get("Authorization");
+        var authString = request.getHeader(HTTPHeaders.AUTHORIZATION);
         if (authString == null) {
             return null;
         }
@@ -0,0 +1,282 @@
+package winsome.server;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+
+import winsome.lib.nio.BufferPool;
+import winsome.lib.nio.TimerWheel;
+
+/**
+ * Class that holds the state of a client connection served by a reactor.
+ * The connection supports HTTP/1.1 pipelining: every complete request found in
+ * the request buffer is dispatched to the workers right away, while the
+ * responses are queued in request order and written back in that same order.
+ * 
+ * All the methods, except completeResponse, appendResponse and failResponse,
+ * must be called by the reactor thread that owns the connection. The workers
+ * never touch the selection key: completeResponse hands the connection to the
+ * reactor's completion queue.
+ */
+public class Connection {
+    // the maximum number of requests of a single client that can be in flight
+    // at the same time, when it is reached the client is not read anymore until
+    // some response has been sent
+    public static final int MAX_PIPELINED_REQUESTS = 32;
+
+    /**
+     * The phases of a connection, that determine which timeout applies
+     */
+    public enum Phase {
+        // waiting for a new request
+        IDLE,
+        // receiving the start line and the headers of a request
+        HEADERS,
+        // receiving the body of a request
+        BODY,
+        // waiting for the workers to complete the responses
+        BUSY,
+        // waiting for the client to receive the responses
+        WRITING
+    }
+
+    // the client's selection key
+    private SelectionKey key;
+    // the reactor that serves the connection
+    private Reactor reactor;
+    // the pool of the response buffers
+    private BufferPool bufferPool;
+    // the partial parsing state of the next request
+    private RequestBuffer requestBuffer;
+    // the responses of the requests in flight, in request order
+    private ArrayDeque<PendingResponse> responses = new ArrayDeque<>();
+    // flag that indicates that the client has closed its end of the connection
+    private boolean inputClosed = false;
+    // the current phase of the connection
+    private Phase phase = null;
+    // the timeout of the current phase, null if the phase has no timeout
+    private TimerWheel.Timeout timeout = null;
+
+    public Connection(SelectionKey key, Reactor reactor, RequestBuffer requestBuffer, BufferPool bufferPool) {
+        if (key == null || reactor == null || requestBuffer == null || bufferPool == null) {
+            throw new NullPointerException();
+        }
+        this.key = key;
+        this.reactor = reactor;
+        this.requestBuffer = requestBuffer;
+        this.bufferPool = bufferPool;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    public RequestBuffer getRequestBuffer() {
+        return requestBuffer;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Append a new response to the responses queue
+     * 
+     * @return the new pending response, that will be filled by the worker
+     */
+    public PendingResponse enqueueResponse() {
+        var response = new PendingResponse();
+        this.responses.add(response);
+        return response;
+    }
+
+    /**
+     * Append a response that is already formatted to the responses queue.
+     * The reactor writes it as soon as the previous responses have been written
+     * 
+     * @param buffers the buffers of the formatted response
+     */
+    public void enqueueResponse(ByteBuffer[] buffers) {
+        this.enqueueResponse().complete(buffers);
+    }
+
+    /**
+     * Get the response that has to be written next
+     * 
+     * @return the head of the responses queue, null if there are no responses
+     *         in flight
+     */
+    public PendingResponse peekResponse() {
+        return this.responses.peek();
+    }
+
+    /**
+     * Remove the head of the responses queue, after all its parts have been
+     * written
+     */
+    public void removeResponse() {
+        this.responses.poll();
+    }
+
+    /**
+     * Remove the part of the head response that has been completely written,
+     * and give its buffers back to the pool
+     */
+    public void removeWrittenPart() {
+        var response = this.responses.peek();
+        if (response != null) {
+            releaseBuffers(response.removePart());
+        }
+    }
+
+    /**
+     * @return true if no more requests can be dispatched before some response
+     *         has been written
+     */
+    public boolean pipelineFull() {
+        return this.responses.size() >= MAX_PIPELINED_REQUESTS;
+    }
+
+    /**
+     * @return true if there are requests whose response has not been completely
+     *         written
+     */
+    public boolean hasResponsesInFlight() {
+        return !this.responses.isEmpty();
+    }
+
+    public boolean isInputClosed() {
+        return inputClosed;
+    }
+
+    public void setInputClosed() {
+        this.inputClosed = true;
+    }
+
+    /**
+     * Compute the current phase of the connection from its parsing state and
+     * its responses in flight
+     * 
+     * @return the current phase
+     */
+    public Phase computePhase() {
+        var head = this.responses.peek();
+        if (head != null) {
+            return head.isReady() ? Phase.WRITING : Phase.BUSY;
+        }
+        if (this.requestBuffer.headersReceived()) {
+            return Phase.BODY;
+        }
+        if (this.requestBuffer.requestStarted()) {
+            return Phase.HEADERS;
+        }
+        return Phase.IDLE;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Enter a new phase, replacing the timeout of the previous one
+     * 
+     * @param phase   the new phase
+     * @param timeout the timeout of the new phase, null if it has none
+     */
+    public void setPhase(Phase phase, TimerWheel.Timeout timeout) {
+        cancelTimeout();
+        this.phase = phase;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Cancel the timeout of the current phase, if any
+     */
+    public void cancelTimeout() {
+        if (this.timeout != null) {
+            this.timeout.cancel();
+            this.timeout = null;
+        }
+    }
+
+    /**
+     * Complete a pending response and signal the reactor that there is
+     * something to write. This method can be called by any thread
+     * The interest set is not changed here: the reactor does it when it drains
+     * its completion queue, so that the key is only modified by its owner
+     * 
+     * @param response the pending response, created by enqueueResponse
+     * @param buffers  the buffers of the formatted response, leased from the
+     *                 connection's pool
+     */
+    public void completeResponse(PendingResponse response, ByteBuffer[] buffers) {
+        if (!response.complete(buffers)) {
+            // the connection has been closed, the response is discarded
+            releaseBuffers(buffers);
+            return;
+        }
+        this.reactor.signalCompletion(this);
+    }
+
+    /**
+     * Append a part of a streamed response and signal the reactor that there
+     * is something to write. The caller waits while too many parts of the
+     * response are waiting to be written. This method can be called by any
+     * thread
+     * 
+     * @param response the pending response, created by enqueueResponse
+     * @param buffers  the buffers of the part, leased from the connection's pool
+     * @param last     true if this is the last part of the response
+     * @throws IOException if the client has gone away, in which case the
+     *                     buffers have been given back to the pool
+     */
+    public void appendResponse(PendingResponse response, ByteBuffer[] buffers, boolean last) throws IOException {
+        boolean appended;
+        try {
+            appended = response.append(buffers, last);
+        } catch (InterruptedException e) {
+            releaseBuffers(buffers);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (!appended) {
+            releaseBuffers(buffers);
+            throw new IOException("the client has gone away");
+        }
+        this.reactor.signalCompletion(this);
+    }
+
+    /**
+     * Terminate a streamed response whose producer has failed, and signal the
+     * reactor, that will close the connection after writing the parts already
+     * appended. This method can be called by any thread
+     * 
+     * @param response the pending response, created by enqueueResponse
+     */
+    public void failResponse(PendingResponse response) {
+        response.fail();
+        this.reactor.signalCompletion(this);
+    }
+
+    /**
+     * Discard all the responses in flight, giving back to the pool the buffers
+     * of the parts that have not been written.
+     * Called when the connection is closed
+     */
+    public void discardResponses() {
+        PendingResponse response;
+        while ((response = this.responses.poll()) != null) {
+            for (var buffers : response.discard()) {
+                releaseBuffers(buffers);
+            }
+        }
+    }
+
+    private void releaseBuffers(ByteBuffer[] buffers) {
+        for (var buffer : buffers) {
+            this.bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package winsome.server;
+
+/**
+ * Class that holds the limits that the server enforces on the client
+ * connections. A timeout that is not positive is disabled, as well as the
+ * maximum number of connections.
+ */
+public class ConnectionLimits {
+    // the maximum time a connection can wait for a new request
+    public final long idleTimeoutMillis;
+    // the maximum time to receive the start line and the headers of a request,
+    // from its first byte
+    public final long headerReadTimeoutMillis;
+    // the maximum time to receive the body of a request, from the end of the
+    // headers
+    public final long bodyReadTimeoutMillis;
+    // the maximum number of open connections
+    public final int maxConnections;
+
+    public ConnectionLimits(long idleTimeoutMillis, long headerReadTimeoutMillis, long bodyReadTimeoutMillis,
+            int maxConnections) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.headerReadTimeoutMillis = headerReadTimeoutMillis;
+        this.bodyReadTimeoutMillis = bodyReadTimeoutMillis;
+        this.maxConnections = maxConnections;
+    }
+}
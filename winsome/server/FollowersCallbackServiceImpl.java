@@ -2,8 +2,8 @@ package winsome.server;
 
 import java.rmi.RemoteException;
 import java.rmi.server.RemoteServer;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import winsome.common.responses.UserResponse;
 import winsome.common.rmi.FollowersCallback;
@@ -14,10 +14,21 @@ import winsome.server.database.exceptions.AuthenticationException;
 
 /**
  * Server implementation of the followers callback service
+ * 
+ * The callbacks map is concurrent and no method is synchronized: the
+ * notifications are remote calls, and holding a monitor during them would
+ * serialize all the notifications and pin the virtual threads that execute
+ * the requests to their carriers.
+ * 
+ * NOTE: the callers hold only the shared database lock, so the notifications
+ * to the same user can be concurrent and are not ordered. Concurrent
+ * notifications are safe because the client's FollowersCallbackImpl is
+ * synchronized, but a follow and an unfollow racing on the same pair of users
+ * can reach the client in either order.
  */
 public class FollowersCallbackServiceImpl extends RemoteServer implements FollowersCallbackService {
     // the map of callbacks
-    private HashMap<String, FollowersCallback> callbacks = new HashMap<>();
+    private ConcurrentHashMap<String, FollowersCallback> callbacks = new ConcurrentHashMap<>();
     // the auth interface used to authenticate users
     private AuthenticationInterface authInterface;
     // reference to the server's database
@@ -40,7 +51,7 @@ public class FollowersCallbackServiceImpl extends RemoteServer implements Follow
      * @throws AuthenticationException if the username and/or authToken are not
      *                                 valid
      */
-    public synchronized void registerForCallback(String username, String authToken, FollowersCallback callback)
+    public void registerForCallback(String username, String authToken, FollowersCallback callback)
             throws RemoteException, AuthenticationException {
         if (!this.authInterface.authenticateUser(username, authToken)) {
             throw new AuthenticationException();
@@ -59,7 +70,7 @@ public class FollowersCallbackServiceImpl extends RemoteServer implements Follow
      * @throws AuthenticationException if the username and/or authToken are not
      *                                 valid
      */
-    public synchronized void unregisterForCallback(String username, String authToken)
+    public void unregisterForCallback(String username, String authToken)
             throws RemoteException, AuthenticationException {
         if (!this.authInterface.authenticateUser(username, authToken)) {
             throw new AuthenticationException();
@@ -79,7 +90,7 @@ public class FollowersCallbackServiceImpl extends RemoteServer implements Follow
      * @throws AuthenticationException if the username and/or authToken are not
      *                                 valid
      */
-    public synchronized List<UserResponse> getFollowers(String username, String authToken)
+    public List<UserResponse> getFollowers(String username, String authToken)
             throws RemoteException, AuthenticationException {
         if (!this.authInterface.authenticateUser(username, authToken)) {
             throw new AuthenticationException();
@@ -94,10 +105,11 @@ public class FollowersCallbackServiceImpl extends RemoteServer implements Follow
      * @param followedUser the new follower
      * @throws RemoteException
      */
-    public synchronized void notifyFollow(String username, UserResponse followedUser) throws RemoteException {
+    public void notifyFollow(String username, UserResponse followedUser) throws RemoteException {
         System.out.println("notify followed to " + username + " -> " + followedUser.username);
-        if (this.callbacks.containsKey(username)) {
-            this.callbacks.get(username).notifyFollowed(followedUser);
+        var callback = this.callbacks.get(username);
+        if (callback != null) {
+            callback.notifyFollowed(followedUser);
         }
     }
 
@@ -108,10 +120,11 @@ public class FollowersCallbackServiceImpl extends RemoteServer implements Follow
      * @param followedUser the unfollower
      * @throws RemoteException
      */
-    public synchronized void notifyUnfollow(String username, UserResponse unfollowedUser) throws RemoteException {
+    public void notifyUnfollow(String username, UserResponse unfollowedUser) throws RemoteException {
         System.out.println("notify unfollowed to " + username + " -> " + unfollowedUser.username);
-        if (this.callbacks.containsKey(username)) {
-            this.callbacks.get(username).notifyUnfollowed(unfollowedUser);
+        var callback = this.callbacks.get(username);
+        if (callback != null) {
+            callback.notifyUnfollowed(unfollowedUser);
         }
     }
 }
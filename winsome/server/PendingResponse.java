@@ -0,0 +1,220 @@
+package winsome.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class that represents the response to a request that has been dispatched to
+ * the workers. It is created by the reactor when the request is parsed, so
+ * that the responses of pipelined requests can be queued in request order,
+ * and it is filled by the worker thread when the response is ready.
+ *
+ * A response is made of one or more parts, each one a group of buffers that
+ * is sent with a single gathering write. An ordinary response is completed
+ * with a single part, while a streamed response is appended one part at a
+ * time: the producer waits when MAX_QUEUED_PARTS are waiting to be written, so
+ * that the memory used by a streamed response is bounded.
+ *
+ * If the client goes away before the response has been written, the reactor
+ * discards the pending response. The hand off between the worker and the
+ * reactor is done under the response lock, so that the response buffers are
+ * given back to the pool exactly once, either by the reactor or by the worker.
+ */
+public class PendingResponse {
+    // the maximum number of parts waiting to be written, after which the
+    // producer of a streamed response waits
+    public static final int MAX_QUEUED_PARTS = 4;
+
+    // lock that guards the state of the response
+    private ReentrantLock lock = new ReentrantLock();
+    // condition signalled when a part has been written or the response has
+    // been discarded
+    private Condition partRemoved = lock.newCondition();
+
+    // the parts that have not been written yet
+    private ArrayDeque<ByteBuffer[]> parts = new ArrayDeque<>();
+    // flag that indicates that no more parts will be appended
+    private boolean finished = false;
+    // flag that indicates that the producer has failed before the end of the
+    // response, so that the response is truncated
+    private boolean failed = false;
+    // flag that indicates that the client has gone away
+    private boolean discarded = false;
+
+    /**
+     * Set the whole formatted response. After this call the response is ready
+     * to be written to the client
+     *
+     * @param buffers the buffers of the formatted response
+     * @return true if the response has been set, false if the pending response
+     *         has been discarded, in which case the caller still owns the
+     *         buffers
+     */
+    public boolean complete(ByteBuffer[] buffers) {
+        if (buffers == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            if (this.discarded) {
+                return false;
+            }
+            if (this.finished) {
+                throw new IllegalStateException();
+            }
+            this.parts.add(buffers);
+            this.finished = true;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Append a part of a streamed response, waiting while too many parts are
+     * waiting to be written
+     *
+     * @param buffers the buffers of the part
+     * @param last    true if this is the last part of the response
+     * @return true if the part has been appended, false if the pending response
+     *         has been discarded, in which case the caller still owns the
+     *         buffers
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    public boolean append(ByteBuffer[] buffers, boolean last) throws InterruptedException {
+        if (buffers == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            while (!this.discarded && this.parts.size() >= MAX_QUEUED_PARTS) {
+                this.partRemoved.await();
+            }
+            if (this.discarded) {
+                return false;
+            }
+            if (this.finished) {
+                throw new IllegalStateException();
+            }
+            this.parts.add(buffers);
+            this.finished = last;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Terminate a streamed response whose producer has failed. The parts
+     * already appended are still written, then the connection has to be
+     * closed, since the response is truncated
+     */
+    public void fail() {
+        this.lock.lock();
+        try {
+            this.finished = true;
+            this.failed = true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Discard the pending response
+     *
+     * @return the parts that have not been written, that are now owned by the
+     *         caller
+     */
+    public List<ByteBuffer[]> discard() {
+        this.lock.lock();
+        try {
+            this.discarded = true;
+            var unwritten = new ArrayList<>(this.parts);
+            this.parts.clear();
+            // wake up the producer, if it is waiting
+            this.partRemoved.signalAll();
+            return unwritten;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the response has been discarded, because the client has
+     *         gone away
+     */
+    public boolean isDiscarded() {
+        this.lock.lock();
+        try {
+            return this.discarded;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if there is a part ready to be written
+     */
+    public boolean isReady() {
+        return peekPart() != null;
+    }
+
+    /**
+     * Get the part that has to be written next
+     *
+     * @return the buffers of the part, null if no part is ready
+     */
+    public ByteBuffer[] peekPart() {
+        this.lock.lock();
+        try {
+            return this.parts.peek();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the part that has been completely written
+     *
+     * @return the buffers of the part, that are now owned by the caller
+     */
+    public ByteBuffer[] removePart() {
+        this.lock.lock();
+        try {
+            var part = this.parts.poll();
+            this.partRemoved.signalAll();
+            return part;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all the parts of the response have been written
+     */
+    public boolean isDone() {
+        this.lock.lock();
+        try {
+            return this.finished && this.parts.isEmpty();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the response has been truncated because its producer
+     *         has failed
+     */
+    public boolean isFailed() {
+        this.lock.lock();
+        try {
+            return this.failed;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -3,9 +3,7 @@ package winsome.server;
 import java.io.File;
 import java.io.IOException;
 
-import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
+import winsome.lib.json.JsonCodecs;
 import winsome.server.database.Database;
 
 /**
@@ -50,10 +48,8 @@ public class PersistenceManager extends Thread {
             var serializableDb = this.database.cloneToSerializable();
 
             // write the db content to dbPath
-            var mapper = new ObjectMapper();
-            var writer = mapper.writer(new DefaultPrettyPrinter());
             try {
-                writer.writeValue(new File(this.dbPath), serializableDb);
+                JsonCodecs.prettyWriter().writeValue(new File(this.dbPath), serializableDb);
             } catch (IOException e) {
                 System.out.println("Error saving the database to " + this.dbPath);
                 e.printStackTrace();
@@ -1,6 +1,7 @@
 package winsome.server;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.rmi.RemoteException;
 import java.util.List;
 
@@ -12,15 +13,21 @@ import winsome.common.responses.LoginResponse;
 import winsome.common.responses.MulticastResponse;
 import winsome.common.responses.PartialRewardResponse;
 import winsome.common.responses.PostIdResponse;
-import winsome.common.responses.PostResponse;
 import winsome.common.responses.UserResponse;
 import winsome.common.responses.WalletResponse;
+import winsome.lib.http.BodyFormat;
+import winsome.lib.http.EntityTag;
+import winsome.lib.http.HTTPHeaders;
 import winsome.lib.http.HTTPMethod;
 import winsome.lib.http.HTTPResponse;
 import winsome.lib.http.HTTPResponseCode;
+import winsome.lib.http.StaticResponse;
 import winsome.lib.router.Authenticate;
+import winsome.lib.router.Bulkhead;
 import winsome.lib.router.DeserializeRequestBody;
+import winsome.lib.router.NonBlocking;
 import winsome.lib.router.Route;
+import winsome.lib.router.RouteClass;
 import winsome.server.database.Database;
 import winsome.server.database.exceptions.AuthenticationException;
 import winsome.server.database.exceptions.UserAlreadyLoggedInException;
@@ -42,6 +49,22 @@ import winsome.server.database.exceptions.UserDoesNotExistsException;
  * was authenticated properly (if the credentials were wrong, the router
  * would not call the method, but it would fail with an UNAUTHORIZED response)
  * 
+ * The Bulkhead annotation tells which workers execute the method: the routes
+ * that walk many posts, the ones that modify the state and the ones that wait
+ * for RMI callbacks or remote services each have their own pool
+ * 
+ * When the NonBlocking annotation is present, the method is executed directly
+ * by the reactor thread that received the request, so it must not access the
+ * database or do any blocking operation
+ * 
+ * The lists of posts are streamed to the client one post at a time, without
+ * holding the database operation while the client receives them
+ * 
+ * The posts, the blogs and the feeds have an entity tag computed from the
+ * versions of their posts, so that the router can answer a conditional GET
+ * without serializing them. The versions are always read before the posts, so
+ * that a body is never older than its tag
+ * 
  */
 public class RESTLogic {
     // the server main database
@@ -49,9 +72,9 @@ public class RESTLogic {
     // the followers callback service
     private FollowersCallbackServiceImpl callbackService;
 
-    // multicast informations
-    private String multicastAddress = "";
-    private int multicastPort = 0;
+    // the response to GET /multicast, pre-encoded once the multicast
+    // informations are set
+    private StaticResponse multicastResponse = StaticResponse.of(HTTPResponseCode.NOT_FOUND);
 
     public RESTLogic(Database database, FollowersCallbackServiceImpl callbackService) {
         if (database == null || callbackService == null) {
@@ -62,6 +85,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.POST, path = "/login")
+    @Bulkhead(RouteClass.WRITE)
     @DeserializeRequestBody(LoginRequest.class)
     public HTTPResponse login(LoginRequest body) {
         try {
@@ -85,6 +109,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.DELETE, path = "/login")
+    @Bulkhead(RouteClass.WRITE)
     @Authenticate
     public HTTPResponse logout(String callingUsername) {
         // logout the user
@@ -93,10 +118,11 @@ public class RESTLogic {
         this.database.logout(callingUsername);
         this.database.endOp();
 
-        return new HTTPResponse(HTTPResponseCode.OK);
+        return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
     }
 
     @Route(method = HTTPMethod.GET, path = "/users")
+    @Bulkhead(RouteClass.HEAVY_READ)
     @Authenticate
     public HTTPResponse listUsers(String callingUsername) {
         // list the users that hae at least one tag in
@@ -108,6 +134,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.PUT, path = "/followers/{toFollowUser}")
+    @Bulkhead(RouteClass.EXTERNAL_IO)
     @Authenticate
     public HTTPResponse followUser(String callingUsername, String toFollowUsername) {
         // follow request from callingUsername to toFollowUser
@@ -132,7 +159,7 @@ public class RESTLogic {
             }
 
             this.database.endOp();
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         } catch (UserDoesNotExistsException e) {
             this.database.endOp();
             return HTTPResponse.errorResponse(HTTPResponseCode.UNAUTHORIZED, "User does not exists");
@@ -141,11 +168,12 @@ public class RESTLogic {
 
             // if the notification failed, then by callingUser perspective it is still
             // a success
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         }
     }
 
     @Route(method = HTTPMethod.DELETE, path = "/followers/{toFollowUser}")
+    @Bulkhead(RouteClass.EXTERNAL_IO)
     @Authenticate
     public HTTPResponse unfollowUser(String callingUsername, String toUnfollowUsername) {
         // unfollow request from callingUser to toUnfollowUsername
@@ -172,7 +200,7 @@ public class RESTLogic {
             }
 
             this.database.endExclusive();
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         } catch (UserDoesNotExistsException e) {
             this.database.endExclusive();
             return HTTPResponse.errorResponse(HTTPResponseCode.UNAUTHORIZED, "User does not exists");
@@ -181,11 +209,12 @@ public class RESTLogic {
 
             // if the notification failed, then by callingUser perspective it is still
             // a success
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         }
     }
 
     @Route(method = HTTPMethod.GET, path = "/following")
+    @Bulkhead(RouteClass.LIGHT_READ)
     @Authenticate
     public HTTPResponse listFollowing(String username) {
         // get list of following
@@ -196,6 +225,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.POST, path = "/posts")
+    @Bulkhead(RouteClass.WRITE)
     @DeserializeRequestBody(PostRequest.class)
     @Authenticate
     public HTTPResponse createPost(String callingUsername, PostRequest reqBody) {
@@ -223,22 +253,26 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.GET, path = "/posts/{idPost}")
+    @Bulkhead(RouteClass.LIGHT_READ)
     @Authenticate
     public HTTPResponse getPost(String callingUsername, int idPost) {
         // get a post by id
         this.database.beginOp();
+        var version = this.database.getPostVersion(idPost);
         var res = this.database.getPostFromId(idPost);
         this.database.endOp();
 
         // if the post does not exists return NOT FOUND
         if (res == null) {
-            return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND);
         }
 
-        return HTTPResponse.response(HTTPResponseCode.OK, res);
+        var tag = new EntityTag.Builder().add(idPost).add(version).build();
+        return HTTPResponse.response(HTTPResponseCode.OK, res).setHeader(HTTPHeaders.ETAG, tag);
     }
 
     @Route(method = HTTPMethod.POST, path = "/posts/{idPost}/rewins")
+    @Bulkhead(RouteClass.WRITE)
     @Authenticate
     public HTTPResponse rewinPost(String callingUsername, int postId) {
         // rewin a post
@@ -247,7 +281,7 @@ public class RESTLogic {
         // check if the post actually exists
         if (!this.database.postExists(postId)) {
             this.database.endOp();
-            return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND);
         }
 
         // check that the post's author is not the calling user
@@ -268,7 +302,7 @@ public class RESTLogic {
         this.database.endOp();
 
         if (rewinRes) {
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         } else {
             // if the post was already rewinned, reuturn an error
             return HTTPResponse.errorResponse(HTTPResponseCode.UNPROCESSABLE_ENTITY, "already rewinned");
@@ -276,6 +310,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.POST, path = "/posts/{idPost}/rates")
+    @Bulkhead(RouteClass.WRITE)
     @DeserializeRequestBody(RateRequest.class)
     @Authenticate
     public HTTPResponse ratePost(String callingUsername, int postId, RateRequest reqBody) {
@@ -286,7 +321,7 @@ public class RESTLogic {
         // check if the post actually exists
         if (!this.database.postExists(postId)) {
             this.database.endOp();
-            return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND);
         }
 
         // check that the post's author is not the calling user
@@ -312,7 +347,7 @@ public class RESTLogic {
         this.database.endOp();
 
         if (rewinRes) {
-            return new HTTPResponse(HTTPResponseCode.OK);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
         } else {
             // if the post was already rated return an error
             return HTTPResponse.errorResponse(HTTPResponseCode.UNPROCESSABLE_ENTITY, "already rated");
@@ -320,6 +355,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.POST, path = "/posts/{idPost}/comments")
+    @Bulkhead(RouteClass.WRITE)
     @DeserializeRequestBody(CommentRequest.class)
     @Authenticate
     public HTTPResponse commentPost(String callingUsername, int postId, CommentRequest reqBody) {
@@ -329,7 +365,7 @@ public class RESTLogic {
         // check if the post actually exists
         if (!this.database.postExists(postId)) {
             this.database.endOp();
-            return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND);
         }
 
         // check that the post's author is not the calling user
@@ -349,10 +385,11 @@ public class RESTLogic {
         this.database.addComment(postId, callingUsername, reqBody.content);
 
         this.database.endOp();
-        return new HTTPResponse(HTTPResponseCode.CREATED);
+        return HTTPResponse.emptyResponse(HTTPResponseCode.CREATED);
     }
 
     @Route(method = HTTPMethod.GET, path = "/posts")
+    @Bulkhead(RouteClass.HEAVY_READ)
     @Authenticate
     public HTTPResponse viewBlog(String callingUsername) {
         // get the blog of the calling user
@@ -361,28 +398,72 @@ public class RESTLogic {
 
         // get the blog post ids
         var blogIds = this.database.getPostsIdsFromAuthor(callingUsername);
-        // convert post ids into post responses
-        List<PostResponse> responseList = this.database.getPostReponsesFromIds(blogIds);
+        var tag = postsEntityTag(blogIds);
 
         this.database.endOp();
-        return HTTPResponse.response(HTTPResponseCode.OK, responseList);
+        return HTTPResponse.streamingResponse(HTTPResponseCode.OK, (out, format) -> streamPosts(blogIds, out, format))
+                .setHeader(HTTPHeaders.ETAG, tag);
     }
 
     @Route(method = HTTPMethod.GET, path = "/feed")
+    @Bulkhead(RouteClass.HEAVY_READ)
     @Authenticate
     public HTTPResponse viewFeed(String callingUsername) {
         this.database.beginOp();
 
-        // get the blog post ids
-        var blogIds = this.database.getFeedPostIds(callingUsername);
-        // convert post ids into post responses
-        List<PostResponse> responseList = this.database.getPostReponsesFromIds(blogIds);
+        // get the feed post ids
+        var feedIds = this.database.getFeedPostIds(callingUsername);
+        var tag = postsEntityTag(feedIds);
 
         this.database.endOp();
-        return HTTPResponse.response(HTTPResponseCode.OK, responseList);
+        return HTTPResponse.streamingResponse(HTTPResponseCode.OK, (out, format) -> streamPosts(feedIds, out, format))
+                .setHeader(HTTPHeaders.ETAG, tag);
+    }
+
+    /**
+     * Compute the entity tag of a list of posts from their ids and versions.
+     * The tag changes when a post is added to or removed from the list, and
+     * when a post of the list is rated or commented.
+     * This has to be called inside a database operation
+     * 
+     * @param postIds the ids of the posts
+     * @return the entity tag
+     */
+    private String postsEntityTag(List<Integer> postIds) {
+        var builder = new EntityTag.Builder().add(postIds.size());
+        for (var id : postIds) {
+            builder.add(id).add(this.database.getPostVersion(id));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write the posts with the given ids as an array, one post at a time.
+     * Each post is read in its own database operation, so that a slow client
+     * does not hold the database; the posts deleted in the meantime are
+     * skipped
+     * 
+     * @param postIds the ids of the posts
+     * @param out     the stream of the response body
+     * @param format  the format of the response body
+     * @throws IOException if the body cannot be sent
+     */
+    private void streamPosts(List<Integer> postIds, OutputStream out, BodyFormat format) throws IOException {
+        var arrayWriter = format.arrayWriter(out);
+        for (var id : postIds) {
+            this.database.beginOp();
+            var post = this.database.getPostFromId(id);
+            this.database.endOp();
+
+            if (post != null) {
+                arrayWriter.write(post);
+            }
+        }
+        arrayWriter.finish();
     }
 
     @Route(method = HTTPMethod.DELETE, path = "/posts/{idPost}")
+    @Bulkhead(RouteClass.WRITE)
     @Authenticate
     public HTTPResponse deletePost(String callingUsername, int postId) {
         // delete post is a sensitive operation that has to be
@@ -394,7 +475,7 @@ public class RESTLogic {
         // check if the post actually exists
         if (!this.database.postExists(postId)) {
             this.database.endExclusive();
-            return new HTTPResponse(HTTPResponseCode.NOT_FOUND);
+            return HTTPResponse.emptyResponse(HTTPResponseCode.NOT_FOUND);
         }
 
         // check that the post's author is the calling user
@@ -410,10 +491,11 @@ public class RESTLogic {
         // relase exclusive access
         this.database.endExclusive();
 
-        return new HTTPResponse(HTTPResponseCode.OK);
+        return HTTPResponse.emptyResponse(HTTPResponseCode.OK);
     }
 
     @Route(method = HTTPMethod.GET, path = "/wallet")
+    @Bulkhead(RouteClass.LIGHT_READ)
     @Authenticate
     public HTTPResponse getWallet(String callingUsername) {
         // get the wallet of the calling user
@@ -435,6 +517,7 @@ public class RESTLogic {
     }
 
     @Route(method = HTTPMethod.GET, path = "/wallet/btc")
+    @Bulkhead(RouteClass.EXTERNAL_IO)
     @Authenticate
     public HTTPResponse getWalletInBtc(String callingUsername) {
         // get the wallet of calling user converted in BTC
@@ -482,20 +565,18 @@ public class RESTLogic {
         if (multicastAddress == null) {
             throw new NullPointerException();
         }
-        this.multicastAddress = multicastAddress;
-        this.multicastPort = multicastPort;
+        var response = new MulticastResponse();
+        response.multicastAddress = multicastAddress;
+        response.port = multicastPort;
+        this.multicastResponse = new StaticResponse(HTTPResponseCode.OK, response);
     }
 
     @Route(method = HTTPMethod.GET, path = "/multicast")
+    @NonBlocking
     public HTTPResponse getMulticast() {
-        // get multicast information
-
-        // forge the response
-        var response = new MulticastResponse();
-        response.multicastAddress = this.multicastAddress;
-        response.port = this.multicastPort;
-
-        return HTTPResponse.response(HTTPResponseCode.OK, response);
+        // the multicast informations do not change, so the response has been
+        // encoded when they have been set
+        return HTTPResponse.staticResponse(this.multicastResponse);
     }
 
 }
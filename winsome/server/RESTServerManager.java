@@ -2,44 +2,88 @@ package winsome.server;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
-
-import winsome.lib.http.HTTPParsingException;
-import winsome.lib.http.HTTPResponse;
-import winsome.lib.http.HTTPResponseCode;
+import java.util.EnumMap;
+
+import winsome.lib.http.ResponseCompressor;
+import winsome.lib.nio.BufferPool;
 import winsome.lib.router.InvalidRouteAnnotationException;
+import winsome.lib.router.RouteClass;
 import winsome.lib.router.Router;
 
+/**
+ * The REST server. It is composed by one acceptor, that runs on the thread
+ * that calls serve(), and by a number of reactors, each one running on its own
+ * thread with its own selector.
+ * The acceptor only accepts new clients and assigns each of them to one of the
+ * reactors, that will serve all the client's IO from then on.
+ * 
+ * When the maximum number of connections is reached the acceptor stops
+ * accepting, leaving the new clients in the listen backlog, and asks the
+ * reactor with most idle clients to close its oldest idle one. Accepting is
+ * resumed as soon as a client is closed.
+ */
 public class RESTServerManager {
     // the server's socket channel
     private ServerSocketChannel socketChannel;
-    // main server selector
+    // acceptor selector
     private Selector selector;
-    // the main read/write buffer
-    private ByteBuffer readBuffer;
-    // router to handle the requests
-    private Router router;
-
-    // the workers threadpool
-    private ThreadPoolExecutor requestsExecutor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
-
-    // the read/write buffer capacity
-    private final int BUF_CAPACITY = 4096;
-
-    public RESTServerManager(InetSocketAddress address, Router router)
+    // the reactors that serve the accepted clients
+    private Reactor[] reactors;
+    // index of the reactor from which the next least loaded search starts
+    private int nextReactor = 0;
+
+    // the maximum number of open connections, not positive if unlimited
+    private int maxConnections;
+    // the acceptor key of the server socket channel
+    private SelectionKey acceptKey;
+    // flag that indicates that accepting has been paused
+    private volatile boolean acceptPaused = false;
+
+    // how often the acceptor retries to free a connection while paused
+    private final long PAUSED_RETRY_MILLIS = 100;
+
+    /**
+     * Create a new REST server
+     * 
+     * @param address        the address to bind the server to
+     * @param router         router to handle the requests
+     * @param reactorsNumber the number of reactor threads, if not positive the
+     *                       number of available processors is used
+     * @param workerPools    the workers threadpools, one for each route class,
+     *                       shared by all the reactors
+     * @param bufferPool     the pool of the connections' buffers
+     * @param compressor     the compressor of the response bodies, null to
+     *                       disable the compression
+     * @param limits         the connections timeouts and maximum number
+     * @throws IOException
+     * @throws InvalidRouteAnnotationException
+     */
+    public RESTServerManager(InetSocketAddress address, Router router, int reactorsNumber,
+            EnumMap<RouteClass, WorkerPool> workerPools, BufferPool bufferPool, ResponseCompressor compressor,
+            ConnectionLimits limits)
             throws IOException, InvalidRouteAnnotationException {
-        if (address == null || router == null) {
+        if (address == null || router == null || workerPools == null || bufferPool == null || limits == null) {
             throw new NullPointerException();
         }
-        this.router = router;
+        for (var routeClass : RouteClass.values()) {
+            if (workerPools.get(routeClass) == null) {
+                throw new IllegalArgumentException("missing workers pool for " + routeClass);
+            }
+        }
+        this.maxConnections = limits.maxConnections;
+        if (reactorsNumber <= 0) {
+            reactorsNumber = Runtime.getRuntime().availableProcessors();
+        }
+
+        // create the reactors
+        this.reactors = new Reactor[reactorsNumber];
+        for (int i = 0; i < reactorsNumber; ++i) {
+            this.reactors[i] = new Reactor(i, router, workerPools, bufferPool, compressor, limits,
+                    this::clientClosed);
+        }
 
         // open a socket channel in non blocking mode
         this.socketChannel = ServerSocketChannel.open();
@@ -50,30 +94,31 @@ public class RESTServerManager {
         this.selector = Selector.open();
 
         // register the socket channel for accept ops
-        this.socketChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.acceptKey = this.socketChannel.register(this.selector, SelectionKey.OP_ACCEPT);
     }
 
     public void serve() throws IOException {
-        // initialize the read/write buffer
-        this.readBuffer = ByteBuffer.allocate(BUF_CAPACITY);
+        // start the reactors
+        for (var reactor : this.reactors) {
+            reactor.start();
+        }
 
         for (;;) {
-            // the main loop is blocked at the selector
-            this.selector.select();
+            // the acceptor loop is blocked at the selector
+            // while paused, it periodically retries to free a connection
+            this.selector.select(this.acceptPaused ? PAUSED_RETRY_MILLIS : 0);
+
+            if (this.acceptPaused) {
+                checkPausedAccept();
+            }
 
             // iterate over the selected keys
             var iterator = selector.selectedKeys().iterator();
             while (iterator.hasNext()) {
                 var currentKey = iterator.next();
 
-                // dispatch the current key based on the ready operation
                 if (currentKey.isAcceptable()) {
                     handleAccept();
-                } else if (currentKey.isReadable()) {
-                    handleRead(currentKey);
-                } else if (currentKey.isWritable()) {
-                    handleWrite(currentKey);
-
                 }
 
                 // we have to use the iterator's method remove because
@@ -84,96 +129,91 @@ public class RESTServerManager {
         }
     }
 
-    private void handleAccept() throws IOException, ClosedChannelException {
+    private void handleAccept() throws IOException {
+        if (atConnectionsLimit()) {
+            // stop accepting until some client is closed
+            this.acceptKey.interestOps(0);
+            this.acceptPaused = true;
+            checkPausedAccept();
+            return;
+        }
+
         // accept the new client
         var clientSocket = this.socketChannel.accept();
+        if (clientSocket == null) {
+            return;
+        }
 
         // configure the client non blocking
         clientSocket.configureBlocking(false);
 
-        // register the client for reading on the selector
-        var clientKey = clientSocket.register(selector, SelectionKey.OP_READ);
-
-        // initalize the read buffer attached to the client
-        initializeClient(clientKey);
-
         System.out.println("new client " + clientSocket.getRemoteAddress().toString());
-    }
-
-    private void handleRead(SelectionKey clientKey) throws IOException {
-        var clientChannel = (SocketChannel) clientKey.channel();
-        var reqBuffer = (RequestBuffer) clientKey.attachment();
-
-        // read from the client channel
-        this.readBuffer.clear();
-        int bytesRead = clientChannel.read(this.readBuffer);
 
-        // add the content read to the client's buffer
-        reqBuffer.addToBuffer(this.readBuffer);
-
-        // try to do partial parsing of the message
-        try {
-            reqBuffer.partialParse();
-        } catch (HTTPParsingException e) {
-            // if the request is syntactically malformed
-            // send to client BAD REQUEST
-            System.out.println("Bad HTTP request");
+        // hand the client to a reactor
+        chooseReactor().addClient(clientSocket);
+    }
 
-            var response = new HTTPResponse(HTTPResponseCode.BAD_REQUEST);
-            clientKey.attach(ByteBuffer.wrap(response.getFormattedMessage().getBytes()));
-            clientKey.interestOps(SelectionKey.OP_WRITE);
+    /**
+     * Resume accepting if the number of connections is below the limit,
+     * otherwise ask the reactor with most idle clients to close one
+     */
+    private void checkPausedAccept() {
+        // NOTE: the flag is set before this check, so a reactor that closes a
+        // client after the check always finds it set and wakes the acceptor up
+        if (!atConnectionsLimit()) {
+            this.acceptPaused = false;
+            this.acceptKey.interestOps(SelectionKey.OP_ACCEPT);
             return;
         }
 
-        if (reqBuffer.messageDone()) {
-            // process request
-            this.processRequest(clientKey);
+        Reactor mostIdle = null;
+        for (var reactor : this.reactors) {
+            if (mostIdle == null || reactor.getIdleClientsCount() > mostIdle.getIdleClientsCount()) {
+                mostIdle = reactor;
+            }
         }
-
-        if (bytesRead == -1) {
-            // EOF: client has closed the connection
-            clientChannel.close();
+        if (mostIdle.getIdleClientsCount() > 0) {
+            mostIdle.requestIdleEviction();
         }
     }
 
-    private void handleWrite(SelectionKey clientKey) throws IOException {
-        var clientChannel = (SocketChannel) clientKey.channel();
-        var responseBuffer = (ByteBuffer) clientKey.attachment();
-
-        // write the content of the response buffer to the client
-        clientChannel.write(responseBuffer);
-
-        // if the message has been completely sent, re-initialize the client
-        if (!responseBuffer.hasRemaining()) {
-            initializeClient(clientKey);
+    private boolean atConnectionsLimit() {
+        if (this.maxConnections <= 0) {
+            return false;
+        }
+        var connections = 0;
+        for (var reactor : this.reactors) {
+            connections += reactor.getClientsCount();
         }
+        return connections >= this.maxConnections;
     }
 
-    private void processRequest(SelectionKey clientKey) {
-        var reqBuffer = (RequestBuffer) clientKey.attachment();
-
-        // reset the interest ops of the client
-        clientKey.interestOps(0);
-
-        // process the response
-        // to do this make the executor execute the worker task
-        var worker = new RequestExecutor(this.router, reqBuffer.getRequest(), this.selector, clientKey);
-        this.requestsExecutor.execute(worker);
-
-        // the client key will be put back in the selector
-        // by the worker thread
+    /**
+     * Listener called by the reactors every time a client is closed
+     */
+    private void clientClosed() {
+        if (this.acceptPaused) {
+            this.selector.wakeup();
+        }
     }
 
-    private void initializeClient(SelectionKey clientKey) {
-        // NOTE: All the packets are first parsed in US_ASCII because
-        // parsing them in UTF-8, as specified in RFC 7230 Section 3,
-        // would result in security vulnerabilities. Furthermore the
-        // Content-Length header measures the number of bytes
-        // of the body, so parsing UTF-8 could lead to some discrepancy
-        // between the number of bytes and the number of characters
-        // in the body
-        var reqBuffer = new RequestBuffer(StandardCharsets.US_ASCII);
-        clientKey.attach(reqBuffer);
-        clientKey.interestOps(SelectionKey.OP_READ);
+    /**
+     * Choose the reactor that will serve the next client.
+     * The reactor with the least number of clients is chosen; the search
+     * starts from a different reactor every time, so that ties are broken
+     * in a round robin fashion
+     * 
+     * @return the chosen reactor
+     */
+    private Reactor chooseReactor() {
+        Reactor chosen = null;
+        for (int i = 0; i < this.reactors.length; ++i) {
+            var reactor = this.reactors[(this.nextReactor + i) % this.reactors.length];
+            if (chosen == null || reactor.getClientsCount() < chosen.getClientsCount()) {
+                chosen = reactor;
+            }
+        }
+        this.nextReactor = (this.nextReactor + 1) % this.reactors.length;
+        return chosen;
     }
 }
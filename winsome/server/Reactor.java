@@ -0,0 +1,540 @@
+package winsome.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import winsome.lib.http.HTTPHeaders;
+import winsome.lib.http.HTTPParsingException;
+import winsome.lib.http.HTTPRequest;
+import winsome.lib.http.HTTPResponse;
+import winsome.lib.http.HTTPResponseCode;
+import winsome.lib.http.HTTPResponseEncoder;
+import winsome.lib.http.ResponseCompressor;
+import winsome.lib.nio.BufferPool;
+import winsome.lib.nio.TimerWheel;
+import winsome.lib.router.RouteClass;
+import winsome.lib.router.Router;
+
+/**
+ * Thread subclass that implements a reactor, that is a thread that owns a
+ * selector and serves the IO of a subset of the server's clients.
+ * Clients are assigned to a reactor by the server's acceptor through the
+ * addClient method, that can be safely called from any thread.
+ * 
+ * The workers hand the completed responses back through a completion queue,
+ * that the reactor drains after every select: the selection keys are only
+ * modified by the reactor thread, and the wakeups of the selector are
+ * coalesced, so that a burst of completions costs a single wakeup.
+ * 
+ * The reactor also enforces the connection timeouts: every connection has at
+ * most one timeout, that depends on its phase, kept in a timer wheel that is
+ * advanced after every select.
+ */
+public class Reactor extends Thread {
+    // the reactor's selector
+    private Selector selector;
+    // router to handle the requests
+    private Router router;
+    // the workers threadpools, one for each route class
+    private EnumMap<RouteClass, WorkerPool> workerPools;
+    // the compressor of the response bodies, null if compression is disabled
+    private ResponseCompressor compressor;
+    // the pool of the request and response buffers
+    private BufferPool bufferPool;
+
+    // the clients accepted by the acceptor and not yet registered on the selector
+    private ConcurrentLinkedQueue<SocketChannel> pendingClients = new ConcurrentLinkedQueue<>();
+    // the connections with responses completed by the workers
+    private ConcurrentLinkedQueue<Connection> completions = new ConcurrentLinkedQueue<>();
+    // flag that indicates that the selector has already been woken up for
+    // the completions not yet drained
+    private AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    // the number of clients currently served by this reactor
+    private AtomicInteger clientsCount = new AtomicInteger(0);
+    // listener notified every time a client is closed
+    private Runnable clientClosedListener;
+
+    // the connections timeouts
+    private ConnectionLimits limits;
+    // the timer wheel that holds the connections timeouts
+    private TimerWheel timerWheel;
+    // the idle connections, from the one that has been idle the longest
+    private LinkedHashSet<Connection> idleConnections = new LinkedHashSet<>();
+    // the number of idle connections, readable from any thread
+    private AtomicInteger idleCount = new AtomicInteger(0);
+    // the number of idle connections that the acceptor asked to close
+    private AtomicInteger evictionRequests = new AtomicInteger(0);
+
+    // the timer wheel resolution and size
+    private final long TIMER_TICK_MILLIS = 100;
+    private final int TIMER_SLOTS = 512;
+
+    public Reactor(int reactorId, Router router, EnumMap<RouteClass, WorkerPool> workerPools,
+            BufferPool bufferPool, ResponseCompressor compressor, ConnectionLimits limits,
+            Runnable clientClosedListener) throws IOException {
+        super("reactor-" + reactorId);
+        if (router == null || workerPools == null || bufferPool == null || limits == null
+                || clientClosedListener == null) {
+            throw new NullPointerException();
+        }
+        this.router = router;
+        this.workerPools = workerPools;
+        this.bufferPool = bufferPool;
+        this.compressor = compressor;
+        this.limits = limits;
+        this.clientClosedListener = clientClosedListener;
+        this.timerWheel = new TimerWheel(TIMER_SLOTS, TIMER_TICK_MILLIS, currentMillis());
+
+        // open the reactor's selector
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Assign a new client to this reactor.
+     * The client is registered on the reactor's selector by the reactor thread
+     * itself, because registering a channel on a selector from another thread
+     * would block until the selector wakes up
+     *
+     * @param clientSocket the accepted client, in non blocking mode
+     */
+    public void addClient(SocketChannel clientSocket) {
+        if (clientSocket == null) {
+            throw new NullPointerException();
+        }
+        this.clientsCount.incrementAndGet();
+        this.pendingClients.add(clientSocket);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Get the number of clients currently served by this reactor
+     *
+     * @return the number of clients
+     */
+    public int getClientsCount() {
+        return this.clientsCount.get();
+    }
+
+    /**
+     * Signal that a response of a connection served by this reactor has been
+     * completed. The selector is woken up only by the first completion after
+     * the last drain of the queue. This method can be called by any thread
+     *
+     * @param connection the connection
+     */
+    public void signalCompletion(Connection connection) {
+        this.completions.add(connection);
+        if (this.wakeupPending.compareAndSet(false, true)) {
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Get the number of idle clients of this reactor, that is the clients that
+     * have no request in progress
+     *
+     * @return the number of idle clients
+     */
+    public int getIdleClientsCount() {
+        return this.idleCount.get();
+    }
+
+    /**
+     * Ask the reactor to close the client that has been idle the longest.
+     * Nothing is closed if, when the reactor handles the request, it has no
+     * idle clients. This method can be called by any thread
+     */
+    public void requestIdleEviction() {
+        this.evictionRequests.incrementAndGet();
+        this.selector.wakeup();
+    }
+
+    public void run() {
+        try {
+            for (;;) {
+                // the reactor loop is blocked at the selector, at most until
+                // the next tick of the timer wheel
+                this.selector.select(this.timerWheel.millisToNextTick(currentMillis()));
+
+                // register the clients assigned since the last iteration
+                registerPendingClients();
+
+                // enable the writes of the responses completed by the workers
+                drainCompletions();
+
+                // iterate over the selected keys
+                var iterator = this.selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    var currentKey = iterator.next();
+
+                    // we have to use the iterator's method remove because
+                    // if we use the set remove the iterator would throw
+                    // a ConcurrentModificationException
+                    iterator.remove();
+
+                    // the client could have been closed after the key has
+                    // been selected, while draining the completions
+                    if (!currentKey.isValid()) {
+                        continue;
+                    }
+
+                    // dispatch the current key based on the ready operation
+                    try {
+                        if (currentKey.isReadable()) {
+                            handleRead(currentKey);
+                        } else if (currentKey.isWritable()) {
+                            handleWrite(currentKey);
+                        }
+                    } catch (IOException e) {
+                        // an IO error on a client only affects that client
+                        System.out.println("client IO error: " + e.getMessage());
+                        closeClient(currentKey);
+                    } catch (CancelledKeyException e) {
+                        // the client has been closed while it was being
+                        // served, there is nothing left to do for it
+                    }
+
+                    // the operation could have moved the client to another phase
+                    if (currentKey.isValid()) {
+                        updatePhase((Connection) currentKey.attachment());
+                    }
+                }
+
+                // close the idle clients requested by the acceptor
+                evictIdleClients();
+
+                // close the clients whose timeout has expired
+                this.timerWheel.advance(currentMillis());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void registerPendingClients() throws IOException {
+        SocketChannel clientSocket;
+        while ((clientSocket = this.pendingClients.poll()) != null) {
+            try {
+                // register the client for reading on the selector
+                var clientKey = clientSocket.register(this.selector, SelectionKey.OP_READ);
+
+                // initalize the read buffer attached to the client
+                initializeClient(clientKey);
+                updatePhase((Connection) clientKey.attachment());
+            } catch (ClosedChannelException e) {
+                this.clientsCount.decrementAndGet();
+            }
+        }
+    }
+
+    private void drainCompletions() {
+        // NOTE: the flag is cleared before draining, so a completion added
+        // after the drain always finds it clear and wakes the selector up
+        this.wakeupPending.set(false);
+
+        Connection connection;
+        while ((connection = this.completions.poll()) != null) {
+            var clientKey = connection.getKey();
+            if (!clientKey.isValid()) {
+                continue;
+            }
+            // try to write the completed responses right away, most of them
+            // fit in the socket send buffer
+            try {
+                serveConnection(clientKey);
+            } catch (IOException e) {
+                System.out.println("client IO error: " + e.getMessage());
+                closeClient(clientKey);
+            }
+            if (clientKey.isValid()) {
+                updatePhase(connection);
+            }
+        }
+    }
+
+    private void handleRead(SelectionKey clientKey) throws IOException {
+        var clientChannel = (SocketChannel) clientKey.channel();
+        var connection = (Connection) clientKey.attachment();
+
+        // read from the client channel directly into the client's buffer
+        int bytesRead = connection.getRequestBuffer().readFrom(clientChannel);
+
+        if (bytesRead == -1) {
+            // EOF: client has closed its end of the connection
+            // the complete requests still in the buffer are dispatched and
+            // the responses in flight are sent before closing
+            connection.setInputClosed();
+            serveConnection(clientKey);
+            return;
+        }
+
+        // dispatch all the requests that have been completely received
+        serveConnection(clientKey);
+    }
+
+    /**
+     * Make all the possible progress on a client without blocking: dispatch
+     * the complete requests and write the ready responses, until neither is
+     * possible anymore. The responses computed by the reactor itself are
+     * written in the same loop iteration that received the request
+     * 
+     * @param clientKey the client's key
+     * @throws IOException
+     */
+    private void serveConnection(SelectionKey clientKey) throws IOException {
+        var connection = (Connection) clientKey.attachment();
+
+        dispatchRequests(connection);
+        while (writeResponses(clientKey) > 0) {
+            // the written responses could have freed space in a full pipeline
+            dispatchRequests(connection);
+        }
+
+        if (connection.isInputClosed() && !connection.hasResponsesInFlight()) {
+            // all the responses have been sent to a client that has closed
+            // its end of the connection
+            closeClient(clientKey);
+        }
+    }
+
+    /**
+     * Parse and dispatch to the workers every complete request in the client's
+     * buffer, as long as the client's pipeline is not full.
+     * If the pipeline becomes full the client is not read anymore until some
+     * response has been written
+     * 
+     * @param connection the client connection
+     */
+    private void dispatchRequests(Connection connection) {
+        var reqBuffer = connection.getRequestBuffer();
+        var clientKey = connection.getKey();
+
+        try {
+            // try to do partial parsing of the message
+            reqBuffer.partialParse();
+            while (reqBuffer.messageDone() && !connection.pipelineFull()) {
+                // process request
+                this.processRequest(connection, reqBuffer.takeRequest());
+
+                // the buffer could contain another pipelined request
+                reqBuffer.partialParse();
+            }
+        } catch (HTTPParsingException e) {
+            // if the request is syntactically malformed
+            // send to client BAD REQUEST and discard what has been read
+            System.out.println("Bad HTTP request");
+
+            var response = HTTPResponse.emptyResponse(HTTPResponseCode.BAD_REQUEST);
+            connection.enqueueResponse(HTTPResponseEncoder.encode(response, this.bufferPool));
+            reqBuffer.reset();
+        }
+
+        // read from the client only if the pipeline has room for more requests
+        if (connection.pipelineFull() || connection.isInputClosed()) {
+            clientKey.interestOpsAnd(~SelectionKey.OP_READ);
+        } else {
+            clientKey.interestOpsOr(SelectionKey.OP_READ);
+        }
+    }
+
+    private void handleWrite(SelectionKey clientKey) throws IOException {
+        // the socket send buffer has room again
+        serveConnection(clientKey);
+    }
+
+    /**
+     * Write the ready responses in request order, as long as the channel
+     * accepts them. A streamed response is written part by part, as the worker
+     * appends them. The write interest is registered only if a part could
+     * not be completely written, that is when the socket send buffer is full
+     * 
+     * @param clientKey the client's key
+     * @return the number of responses that have been completely written
+     * @throws IOException
+     */
+    private int writeResponses(SelectionKey clientKey) throws IOException {
+        var clientChannel = (SocketChannel) clientKey.channel();
+        var connection = (Connection) clientKey.attachment();
+
+        var written = 0;
+        var response = connection.peekResponse();
+        while (response != null) {
+            if (response.isDone()) {
+                // a truncated response leaves the client unable to find where
+                // the next response begins
+                if (response.isFailed()) {
+                    throw new IOException("the response has been truncated");
+                }
+                connection.removeResponse();
+                written++;
+                response = connection.peekResponse();
+                continue;
+            }
+
+            // the next part could still be produced by the worker
+            var part = response.peekPart();
+            if (part == null) {
+                break;
+            }
+
+            // write the content of the part buffers to the client
+            // with a single gathering write
+            clientChannel.write(part);
+
+            // if the part has not been completely sent, wait for the
+            // channel to be writable again
+            if (part[part.length - 1].hasRemaining()) {
+                clientKey.interestOpsOr(SelectionKey.OP_WRITE);
+                return written;
+            }
+            connection.removeWrittenPart();
+        }
+
+        // there is nothing more to write for now
+        // if the worker completes the head response after it has been checked,
+        // the completion queue will write it
+        clientKey.interestOpsAnd(~SelectionKey.OP_WRITE);
+        return written;
+    }
+
+    private void processRequest(Connection connection, HTTPRequest request) {
+        // match the request with a route and authenticate it
+        var match = this.router.resolve(request);
+
+        if (match.isNonBlocking()) {
+            // the response is already known or it is cheap to compute, so it
+            // is executed by the reactor itself, saving the handoff to a worker
+            System.out.println(request.getFormattedStartLine());
+            var response = this.router.callAction(match);
+            response.negotiateBodyFormat(request.getHeader(HTTPHeaders.ACCEPT));
+            connection.enqueueResponse(HTTPResponseEncoder.encode(response, this.bufferPool));
+            return;
+        }
+
+        // reserve the response slot, so that the responses are written in
+        // request order
+        var pendingResponse = connection.enqueueResponse();
+
+        // process the response
+        // to do this make the executor of the route class execute the worker task
+        var workerPool = this.workerPools.get(match.getRouteClass());
+        var worker = new RequestExecutor(this.router, match, connection, pendingResponse, this.compressor);
+        if (!workerPool.submit(worker)) {
+            // the workers are saturated: shed the load by answering
+            // SERVICE UNAVAILABLE straight from the reactor
+            var response = new HTTPResponse(HTTPResponseCode.SERVICE_UNAVAILABLE)
+                    .setHeader(HTTPHeaders.RETRY_AFTER, Integer.toString(workerPool.getRetryAfterSeconds()));
+            pendingResponse.complete(HTTPResponseEncoder.encode(response, this.bufferPool));
+            return;
+        }
+
+        // the worker thread will complete the pending response and
+        // signal the reactor
+    }
+
+    private void initializeClient(SelectionKey clientKey) {
+        // NOTE: All the packets are first parsed in US_ASCII because
+        // parsing them in UTF-8, as specified in RFC 7230 Section 3,
+        // would result in security vulnerabilities. Furthermore the
+        // Content-Length header measures the number of bytes
+        // of the body, so parsing UTF-8 could lead to some discrepancy
+        // between the number of bytes and the number of characters
+        // in the body
+        var reqBuffer = new RequestBuffer(StandardCharsets.US_ASCII, this.bufferPool);
+        clientKey.attach(new Connection(clientKey, this, reqBuffer, this.bufferPool));
+        clientKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Move the client to the phase that corresponds to its current state,
+     * arming the timeout of the new phase.
+     * The timeout of a phase starts when the phase is entered, so that a client
+     * cannot extend it by sending a request a few bytes at a time; only while
+     * writing, every write is considered progress and restarts the timeout
+     *
+     * @param connection the client connection
+     */
+    private void updatePhase(Connection connection) {
+        var previous = connection.getPhase();
+        var phase = connection.computePhase();
+        if (phase == previous && phase != Connection.Phase.WRITING) {
+            return;
+        }
+
+        // keep track of the idle connections
+        if (previous == Connection.Phase.IDLE) {
+            this.idleConnections.remove(connection);
+        }
+        if (phase == Connection.Phase.IDLE) {
+            this.idleConnections.add(connection);
+        }
+        this.idleCount.set(this.idleConnections.size());
+
+        TimerWheel.Timeout timeout = null;
+        var timeoutMillis = phaseTimeout(phase);
+        if (timeoutMillis > 0) {
+            var clientKey = connection.getKey();
+            timeout = this.timerWheel.schedule(() -> {
+                System.out.println("client timed out in phase " + phase);
+                closeClient(clientKey);
+            }, timeoutMillis, currentMillis());
+        }
+        connection.setPhase(phase, timeout);
+    }
+
+    private long phaseTimeout(Connection.Phase phase) {
+        switch (phase) {
+            case IDLE:
+            case WRITING:
+                return this.limits.idleTimeoutMillis;
+            case HEADERS:
+                return this.limits.headerReadTimeoutMillis;
+            case BODY:
+                return this.limits.bodyReadTimeoutMillis;
+            default:
+                // the workers are processing the requests
+                return 0;
+        }
+    }
+
+    private void evictIdleClients() {
+        var requests = this.evictionRequests.getAndSet(0);
+        for (int i = 0; i < requests && !this.idleConnections.isEmpty(); ++i) {
+            var oldest = this.idleConnections.iterator().next();
+            System.out.println("too many connections, closing an idle client");
+            closeClient(oldest.getKey());
+        }
+    }
+
+    private void closeClient(SelectionKey clientKey) {
+        var connection = (Connection) clientKey.attachment();
+        connection.cancelTimeout();
+        if (this.idleConnections.remove(connection)) {
+            this.idleCount.set(this.idleConnections.size());
+        }
+        connection.discardResponses();
+        connection.getRequestBuffer().release();
+        clientKey.cancel();
+        try {
+            clientKey.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.clientsCount.decrementAndGet();
+        this.clientClosedListener.run();
+    }
+
+    private static long currentMillis() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
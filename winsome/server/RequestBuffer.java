@@ -1,106 +1,370 @@
 package winsome.server;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 
+import winsome.lib.http.HTTPHeaders;
 import winsome.lib.http.HTTPParsingException;
 import winsome.lib.http.HTTPRequest;
+import winsome.lib.nio.BufferPool;
 
 /**
  * Helper class that impelents a request buffer, that provides a wrapper over
  * the partial parsing state of an HTTP request.
  * This is necessary because the server's IO is managed by NIO non-blocking
  * channels and this requires handling partial messages.
+ *
+ * The parser is a resumable state machine that works directly on the received
+ * bytes: it remembers where the scanning stopped, so every byte is examined
+ * only once regardless of how the message is split across reads. Only the
+ * start line and the header fields are decoded with the parsing charset, while
+ * the body, delimited by Content-Length in bytes, is copied out as bytes.
+ *
+ * The bytes are read from the channel directly into the buffer, that is
+ * leased from the buffer pool. Its size adapts to the requests of the
+ * connection: it is leased with the average size of the last requests, it is
+ * grown to hold the whole body as soon as Content-Length is known, and it is
+ * given back to the pool when no request is in progress, so that idle
+ * connections do not hold any buffer.
  */
 public class RequestBuffer {
+    // the maximum length of the start line and headers of a request
+    public static final int MAX_HEADER_LENGTH = 8192;
+    // the maximum length of the body of a request
+    public static final int MAX_BODY_LENGTH = 1 << 20;
+
+    // the initial estimate of the requests size
+    private static final int INITIAL_CAPACITY = 1024;
+    // the bounds of the capacity of a buffer leased with the estimate
+    private static final int MIN_CAPACITY = BufferPool.MIN_CLASS_SIZE;
+    private static final int MAX_ADAPTIVE_CAPACITY = 64 * 1024;
+
+    // the parsing states
+    private enum State {
+        START_LINE,
+        HEADERS,
+        BODY,
+        DONE
+    }
+
     // parsing charset
     private Charset charset;
-    // the partial read buffer
-    private String buffer = "";
+    // the pool of the buffer
+    private BufferPool bufferPool;
+    // the received bytes, from the beginning of the current message up to the
+    // buffer position, null if there are no bytes to hold
+    private ByteBuffer buffer = null;
+    // exponentially weighted moving average of the requests size
+    private int averageRequestSize = INITIAL_CAPACITY;
     // the parsed request
     private HTTPRequest request = new HTTPRequest();
 
-    // flag that indicates wether the header has been parsed
-    private boolean headerParsed = false;
-    // the header length
-    private int headerLength = 0;
+    // the current parsing state
+    private State state = State.START_LINE;
+    // offset of the beginning of the line that is being parsed
+    private int lineStart = 0;
+    // offset from which the search of the end of the line resumes
+    private int scanPosition = 0;
+    // offset of the beginning of the body
+    private int bodyStart = 0;
+    // the body length in bytes, -1 if there is no Content-Length header
+    private int contentLength = -1;
 
-    public RequestBuffer(Charset charset) {
+    public RequestBuffer(Charset charset, BufferPool bufferPool) {
+        if (charset == null || bufferPool == null) {
+            throw new NullPointerException();
+        }
         this.charset = charset;
-    }
-
-    public String getBuffer() {
-        return this.buffer;
+        this.bufferPool = bufferPool;
     }
 
     /**
-     * Append the given byte buffer to the internal buffer
-     * The content of the buffer is decoded with the given charset
-     * 
-     * @param buf the byte buffer
+     * Read from the channel directly into the buffer, after the bytes already
+     * received. If the buffer is full it is grown first
+     *
+     * @param channel the channel to read from
+     * @return the number of bytes read, -1 if the channel has reached EOF
+     * @throws IOException
      */
-    public void addToBuffer(ByteBuffer buf) {
-        buf.flip();
-        this.buffer += this.charset.decode(buf).toString();
-        buf.flip();
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        if (this.buffer == null) {
+            this.buffer = this.bufferPool.lease(estimatedCapacity());
+        } else if (!this.buffer.hasRemaining()) {
+            ensureCapacity(this.buffer.capacity() * 2);
+        }
+        return channel.read(this.buffer);
     }
 
     /**
      * Check if the message is done reading
-     * This is done by checking the headers and the Content-length (if it exist)
-     * header for requests with non empty body
-     * 
+     *
      * @return true if the message has been completely received
      */
     public boolean messageDone() {
-        var contentLength = request.getHeaders().get("Content-Length");
-        if (!this.headerParsed)
-            return false;
-        if (this.headerParsed && contentLength == null) {
-            return true;
-        }
-        return this.buffer.length() == Integer.parseInt(contentLength) + this.headerLength + 4;
+        return this.state == State.DONE;
+    }
+
+    /**
+     * Check if some bytes of the next request have been received
+     *
+     * @return true if the buffer holds a partial or complete request
+     */
+    public boolean requestStarted() {
+        return this.state != State.START_LINE || (this.buffer != null && this.buffer.position() > 0);
+    }
+
+    /**
+     * Check if the start line and the headers of the request have been
+     * completely received
+     *
+     * @return true if only the body, if any, is still missing
+     */
+    public boolean headersReceived() {
+        return this.state == State.BODY || this.state == State.DONE;
     }
 
     /**
      * Do partial parsing of the available buffer
-     * In particular try to parse the start line, the headers and the body
-     * 
-     * @throws HTTPParsingException
+     * The parsing resumes from where the previous call stopped and advances
+     * through the start line, the headers and the body as far as the received
+     * bytes allow
+     *
+     * @throws HTTPParsingException if the request is malformed
      */
     public void partialParse() throws HTTPParsingException {
-        // stry to split the buffer at double CRCL
-        var parts = this.buffer.split("\r\n\r\n");
-        if (!this.headerParsed && this.buffer.contains("\r\n\r\n")) {
-            // if the header has not been parser and it has been completely read
-
-            // get the first line and the headers lines
-            var firstAndRest = parts[0].split("\r\n", 2);
-            var firstLine = firstAndRest[0];
-
-            // parse the first line
-            this.request.parseStartLine(firstLine);
-            if (firstAndRest.length > 1) {
-                var headerLines = firstAndRest[1].split("\r\n");
-                this.request.parseHeaders(headerLines);
+        if (this.buffer == null) {
+            return;
+        }
+        while (this.state == State.START_LINE || this.state == State.HEADERS) {
+            var lineEnd = findLineEnd();
+            if (lineEnd == -1) {
+                if (this.buffer.position() > MAX_HEADER_LENGTH) {
+                    throw new HTTPParsingException();
+                }
+                return;
             }
+            var lineLength = lineEnd - this.lineStart;
 
-            this.headerParsed = true;
-            this.headerLength = parts[0].length();
+            if (this.state == State.START_LINE) {
+                // From RFC 7230 section 3.5 a server should ignore at least one
+                // empty line received prior to the request line
+                if (lineLength > 0) {
+                    this.request.parseStartLine(decode(this.lineStart, lineLength));
+                    this.state = State.HEADERS;
+                }
+            } else if (lineLength == 0) {
+                // the empty line terminates the headers
+                this.bodyStart = lineEnd + 2;
+                this.state = State.BODY;
+                if (this.contentLength > 0) {
+                    ensureCapacity(this.bodyStart + this.contentLength);
+                }
+            } else {
+                parseHeaderLine(this.lineStart, lineLength);
+            }
 
+            // the next line begins after the CRLF
+            this.lineStart = lineEnd + 2;
+            this.scanPosition = this.lineStart;
         }
-        // if the message has been completely received parse the body
-        if (this.messageDone() && parts.length > 1) {
-            this.request.parseBody(parts[1]);
+
+        if (this.state == State.BODY) {
+            if (this.contentLength == -1) {
+                // no body
+                this.state = State.DONE;
+            } else if (this.buffer.position() - this.bodyStart >= this.contentLength) {
+                // the body has been completely received
+                // the body is kept as bytes, since its format is known only
+                // when it is deserialized
+                var bodyBytes = new byte[this.contentLength];
+                this.buffer.get(this.bodyStart, bodyBytes);
+                this.request.parseBody(bodyBytes);
+                this.state = State.DONE;
+            }
+        }
+    }
+
+    /**
+     * Take the parsed HTTP request out of the buffer.
+     * The buffer is reset to parse the next request, keeping the bytes that
+     * follow the taken message, that are the beginning of the next pipelined
+     * request. If there are no such bytes the buffer is given back to the pool,
+     * otherwise it is moved to a smaller one if it has become much larger
+     * than the requests of the connection.
+     * Must be called only when the message is done.
+     *
+     * @return the HTTP request
+     */
+    public HTTPRequest takeRequest() {
+        if (this.state != State.DONE) {
+            throw new IllegalStateException();
+        }
+        var request = this.request;
+        var messageLength = this.bodyStart + Math.max(this.contentLength, 0);
+
+        // update the estimate of the requests size
+        this.averageRequestSize += (messageLength - this.averageRequestSize) / 4;
+
+        // move the following bytes at the beginning of the buffer
+        this.buffer.flip();
+        this.buffer.position(messageLength);
+        if (!this.buffer.hasRemaining()) {
+            release();
+        } else if (this.buffer.capacity() > 4 * estimatedCapacity()
+                && this.buffer.remaining() <= estimatedCapacity()) {
+            var smaller = this.bufferPool.lease(estimatedCapacity());
+            smaller.put(this.buffer);
+            this.bufferPool.release(this.buffer);
+            this.buffer = smaller;
+        } else {
+            this.buffer.compact();
+        }
+
+        resetState();
+        return request;
+    }
+
+    /**
+     * Discard all the content of the buffer and the partial parsing state
+     */
+    public void reset() {
+        release();
+        resetState();
+    }
+
+    /**
+     * Give the buffer back to the pool, discarding its content.
+     * Called also when the connection is closed
+     */
+    public void release() {
+        if (this.buffer != null) {
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
         }
     }
 
     /**
      * Get the parsed HTTP request
-     * 
+     *
      * @return the HTTP request
      */
     public HTTPRequest getRequest() {
         return request;
     }
+
+    private void resetState() {
+        this.request = new HTTPRequest();
+        this.state = State.START_LINE;
+        this.lineStart = 0;
+        this.scanPosition = 0;
+        this.bodyStart = 0;
+        this.contentLength = -1;
+    }
+
+    /**
+     * Search the end of the current line, starting from the scan position.
+     * If the line is not complete, the scan position is updated so that the
+     * next search does not examine the same bytes again
+     *
+     * @return the offset of the CR of the terminating CRLF, -1 if the line is
+     *         not complete
+     */
+    private int findLineEnd() {
+        var end = this.buffer.position();
+        for (int i = this.scanPosition; i < end - 1; ++i) {
+            if (this.buffer.get(i) == '\r' && this.buffer.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        // the last byte could be a CR whose LF has not been received yet
+        this.scanPosition = Math.max(this.lineStart, end - 1);
+        return -1;
+    }
+
+    /**
+     * Parse a header line, as described in RFC 7230 section 3.2
+     * Each header field consists of a case-insensitive field name followed
+     * by a colon (":"), optional leading whitespace, the field value, and
+     * optional trailing whitespace.
+     *
+     * @param start  the offset of the line
+     * @param length the length of the line
+     * @throws HTTPParsingException if the line is malformed
+     */
+    private void parseHeaderLine(int start, int length) throws HTTPParsingException {
+        var colon = -1;
+        for (int i = start; i < start + length; ++i) {
+            if (this.buffer.get(i) == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= start) {
+            throw new HTTPParsingException();
+        }
+
+        // the well-known names are recognized without decoding them
+        var name = HTTPHeaders.matchWellKnown(this.buffer, start, colon - start);
+        if (name == null) {
+            name = decode(start, colon - start);
+        }
+        var value = decode(colon + 1, start + length - colon - 1).trim();
+
+        if (name == HTTPHeaders.CONTENT_LENGTH) {
+            this.contentLength = parseContentLength(value);
+        }
+        this.request.setHeader(name, value);
+    }
+
+    private int parseContentLength(String value) throws HTTPParsingException {
+        if (value.isEmpty() || value.length() > 9) {
+            throw new HTTPParsingException();
+        }
+        var length = 0;
+        for (int i = 0; i < value.length(); ++i) {
+            var c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new HTTPParsingException();
+            }
+            length = length * 10 + (c - '0');
+        }
+        if (length > MAX_BODY_LENGTH) {
+            throw new HTTPParsingException();
+        }
+        return length;
+    }
+
+    private String decode(int start, int length) {
+        // the buffer can be direct, so the bytes are copied out of it
+        var bytes = new byte[length];
+        this.buffer.get(start, bytes);
+        return new String(bytes, this.charset);
+    }
+
+    /**
+     * @return the capacity of a new buffer, estimated from the size of the
+     *         last requests
+     */
+    private int estimatedCapacity() {
+        return Math.max(MIN_CAPACITY, Math.min(MAX_ADAPTIVE_CAPACITY, this.averageRequestSize));
+    }
+
+    /**
+     * Grow the buffer so that it can hold at least the given number of bytes.
+     * The content is moved to a larger buffer leased from the pool
+     *
+     * @param capacity the required capacity
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.buffer.capacity()) {
+            return;
+        }
+        var newBuffer = this.bufferPool.lease(capacity);
+        this.buffer.flip();
+        newBuffer.put(this.buffer);
+        this.bufferPool.release(this.buffer);
+        this.buffer = newBuffer;
+    }
 }
@@ -1,61 +1,174 @@
 package winsome.server;
 
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
-import winsome.lib.http.HTTPRequest;
+import winsome.lib.http.ChunkedOutputStream;
+import winsome.lib.http.ContentCoding;
+import winsome.lib.http.HTTPHeaders;
+import winsome.lib.http.HTTPResponse;
+import winsome.lib.http.HTTPResponseCode;
+import winsome.lib.http.HTTPResponseEncoder;
+import winsome.lib.http.ResponseCompressor;
+import winsome.lib.router.RouteMatch;
 import winsome.lib.router.Router;
 
 /**
  * Runnable that process a REST request
  */
 public class RequestExecutor implements Runnable {
+    // the size of the chunks of a streamed response
+    private static final int CHUNK_SIZE = 16 * 1024;
+
     private Router serverRouter;
-    private HTTPRequest requestToBeProcessed;
-    private Selector serverSelector;
-    private SelectionKey clientKey;
+    private RouteMatch requestToBeProcessed;
+    private Connection connection;
+    private PendingResponse pendingResponse;
+    // the compressor of the response bodies, null if compression is disabled
+    private ResponseCompressor compressor;
+    // when the request has been parsed, in System.nanoTime units
+    private long receivedNanos;
 
     /**
      * The request executor constructor takes as parameters the server router and
      * the
-     * request to be processed
-     * It takes also the server selector and the selection key of the client
-     * Caller must ensure that the client key is not in the selector interest set
+     * request to be processed, already resolved by the router
+     * It takes also the client connection and the pending response that has to
+     * be completed with the response to the request
      * 
      * @param serverRouter
      * @param requestToBeProcessed
-     * @param serverSelector
-     * @param clientKey
+     * @param connection
+     * @param pendingResponse
+     * @param compressor      the compressor of the response bodies, null to
+     *                        disable the compression
      */
-    public RequestExecutor(Router serverRouter, HTTPRequest requestToBeProcessed, Selector serverSelector,
-            SelectionKey clientKey) {
-        if (serverRouter == null || requestToBeProcessed == null || serverSelector == null || clientKey == null) {
+    public RequestExecutor(Router serverRouter, RouteMatch requestToBeProcessed, Connection connection,
+            PendingResponse pendingResponse, ResponseCompressor compressor) {
+        if (serverRouter == null || requestToBeProcessed == null || connection == null
+                || pendingResponse == null) {
             throw new NullPointerException();
         }
         this.serverRouter = serverRouter;
         this.requestToBeProcessed = requestToBeProcessed;
-        this.serverSelector = serverSelector;
-        this.clientKey = clientKey;
+        this.connection = connection;
+        this.pendingResponse = pendingResponse;
+        this.compressor = compressor;
+        // the executor is created as soon as the request has been parsed
+        this.receivedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the time elapsed since the request has been parsed, in
+     *         milliseconds
+     */
+    public long getAgeMillis() {
+        return (System.nanoTime() - this.receivedNanos) / 1_000_000;
+    }
+
+    /**
+     * @return true if the client has gone away, so that there is no reason to
+     *         execute the request
+     */
+    public boolean isCancelled() {
+        return this.pendingResponse.isDiscarded();
+    }
+
+    /**
+     * Answer the request with SERVICE UNAVAILABLE without executing it
+     * 
+     * @param retryAfterSeconds the number of seconds that the client is asked
+     *                          to wait before retrying
+     */
+    public void reject(int retryAfterSeconds) {
+        var response = new HTTPResponse(HTTPResponseCode.SERVICE_UNAVAILABLE)
+                .setHeader(HTTPHeaders.RETRY_AFTER, Integer.toString(retryAfterSeconds));
+        var responseBuffers = HTTPResponseEncoder.encode(response, this.connection.getBufferPool());
+        this.connection.completeResponse(this.pendingResponse, responseBuffers);
     }
 
     public void run() {
-        System.out.println(requestToBeProcessed.getFormattedStartLine());
+        System.out.println(requestToBeProcessed.getRequest().getFormattedStartLine());
 
         // execute the request
-        var response = this.serverRouter.callAction(requestToBeProcessed);
+        // NOTE: the pending response must be completed whatever happens,
+        // otherwise the connection would wait for it forever
+        var request = requestToBeProcessed.getRequest();
+        HTTPResponse response;
+        try {
+            response = this.serverRouter.callAction(requestToBeProcessed);
+            response.negotiateBodyFormat(request.getHeader(HTTPHeaders.ACCEPT));
+            if (this.compressor != null) {
+                response.negotiateContentCoding(request.getHeader(HTTPHeaders.ACCEPT_ENCODING));
+            }
+        } catch (RuntimeException | Error e) {
+            e.printStackTrace();
+            response = HTTPResponse.emptyResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
+        }
 
-        // attach to the client a new buffer containing the response
-        clientKey.attach(ByteBuffer.wrap(response.getFormattedMessage().getBytes()));
+        if (response.getStreamingBody() != null) {
+            streamResponse(response);
+            return;
+        }
 
-        // put the client key back in the selector interest set, so
-        // set the client interest op to write
-        clientKey.interestOps(SelectionKey.OP_WRITE);
+        // format the response in pooled buffers
+        ByteBuffer[] responseBuffers;
+        try {
+            responseBuffers = HTTPResponseEncoder.encode(response, this.connection.getBufferPool(),
+                    this.compressor);
+        } catch (RuntimeException | Error e) {
+            e.printStackTrace();
+            var error = HTTPResponse.emptyResponse(HTTPResponseCode.INTERNAL_SERVER_ERROR);
+            responseBuffers = HTTPResponseEncoder.encode(error, this.connection.getBufferPool());
+        }
 
-        // wakeup the server selector
-        // this is very important because otherwise the change to the interest
-        // set will be processed the next time the selector will wake up
-        this.serverSelector.wakeup();
+        // complete the pending response, the reactor will write it to the
+        // client as soon as all the previous responses have been written
+        this.connection.completeResponse(this.pendingResponse, responseBuffers);
     }
 
+    /**
+     * Send a response whose body is streamed in chunks. The head is appended
+     * first, then each chunk as soon as it is full, so that the reactor can
+     * write them while the body is being produced. Appending waits while too
+     * many chunks are waiting to be written. If the client accepts it, the
+     * body is compressed before being framed, whatever its size
+     * 
+     * @param response the response
+     */
+    private void streamResponse(HTTPResponse response) {
+        var pool = this.connection.getBufferPool();
+        var out = new ChunkedOutputStream(pool, CHUNK_SIZE,
+                (chunk, last) -> this.connection.appendResponse(this.pendingResponse,
+                        new ByteBuffer[] { chunk }, last));
+        try {
+            var coding = response.getContentCoding();
+            HTTPResponseEncoder.setRepresentationHeaders(response, this.compressor != null);
+            if (this.compressor != null && coding != ContentCoding.IDENTITY) {
+                response.setHeader(HTTPHeaders.CONTENT_ENCODING, coding.getToken());
+            }
+            var head = HTTPResponseEncoder.encodeHead(response, pool);
+            this.connection.appendResponse(this.pendingResponse, new ByteBuffer[] { head }, false);
+
+            if (this.compressor != null && coding != ContentCoding.IDENTITY) {
+                var compressed = this.compressor.compressingStream(out, coding);
+                try {
+                    response.getStreamingBody().writeTo(compressed, response.getBodyFormat());
+                    this.compressor.finishStream(compressed);
+                } finally {
+                    this.compressor.releaseStream(compressed);
+                }
+            } else {
+                response.getStreamingBody().writeTo(out, response.getBodyFormat());
+            }
+            out.finish();
+        } catch (IOException | RuntimeException | Error e) {
+            out.abort();
+            // if the client has gone away there is nobody to tell
+            if (!this.pendingResponse.isDiscarded()) {
+                e.printStackTrace();
+                this.connection.failResponse(this.pendingResponse);
+            }
+        }
+    }
 }
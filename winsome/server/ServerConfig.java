@@ -1,5 +1,9 @@
 package winsome.server;
 
+import java.util.HashMap;
+
+import winsome.lib.router.RouteClass;
+
 /**
  * Class that describes the type of server configuration json.
  * Used for deserialization from the server config file
@@ -9,6 +13,43 @@ public class ServerConfig {
 
     public String serverAddress;
     public int serverPort;
+    // number of reactor threads, if not positive the number of available
+    // processors is used
+    public int reactorThreads;
+    // maximum number of off-heap bytes of the connections' buffer pool, if not
+    // positive a default value is used
+    public long bufferPoolMaxBytes;
+
+    // connection timeouts and maximum number of open connections, if zero a
+    // default value is used, if negative the limit is disabled
+    public long idleTimeoutMillis;
+    public long headerReadTimeoutMillis;
+    public long bodyReadTimeoutMillis;
+    public int maxConnections;
+
+    // the workers pool mode, "bounded" (the default), "cached" or "virtual"
+    // NOTE: in virtual mode every request has its own virtual thread, and at
+    // most workerMaxThreads + workerQueueCapacity requests can be in flight
+    public String workerMode;
+    // bounded workers pool settings, if not positive a default value is used
+    public int workerCoreThreads;
+    public int workerMaxThreads;
+    public int workerQueueCapacity;
+    // seconds that a client rejected by the saturated pool is asked to wait
+    public int retryAfterSeconds;
+    // the workers pools settings of the route classes, that override the
+    // global ones above
+    public HashMap<RouteClass, WorkerPoolConfig> routeClassPools;
+    // maximum time a request can wait for a worker before being answered with
+    // SERVICE UNAVAILABLE, if zero a default value is used, if negative there
+    // is no deadline
+    public long queueDeadlineMillis;
+
+    // minimum size in bytes of a response body that is compressed and
+    // compression level from 1 to 9, if zero a default value is used, if
+    // negative the compression is disabled
+    public int compressionMinBytes;
+    public int compressionLevel;
 
     public String multicastAddress;
     public int multicastPort;
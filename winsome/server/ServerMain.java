@@ -2,24 +2,44 @@ package winsome.server;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.EnumMap;
+import java.util.zip.Deflater;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import winsome.common.rmi.FollowersCallbackService;
 import winsome.common.rmi.Registration;
+import winsome.lib.http.ResponseCompressor;
+import winsome.lib.json.JsonCodecs;
+import winsome.lib.nio.BufferPool;
 import winsome.lib.router.AuthenticationInterface;
 import winsome.lib.router.InvalidRouteAnnotationException;
+import winsome.lib.router.RouteClass;
 import winsome.lib.router.Router;
 import winsome.server.database.AuthenticationImpl;
 import winsome.server.database.Database;
 import winsome.server.database.serializables.SerializableDatabase;
 
 public class ServerMain {
+    // default maximum number of off-heap bytes of the buffer pool
+    private static final long DEFAULT_BUFFER_POOL_MAX_BYTES = 64 * 1024 * 1024;
+    // default connection limits
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    private static final long DEFAULT_HEADER_READ_TIMEOUT_MILLIS = 10000;
+    private static final long DEFAULT_BODY_READ_TIMEOUT_MILLIS = 30000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    // default maximum time a request can wait for a worker
+    private static final long DEFAULT_QUEUE_DEADLINE_MILLIS = 10000;
+    // default minimum size of a compressed response body
+    private static final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+
     public static void main(String[] args) {
         // get the config file path from the first argument
         if (args.length != 1) {
@@ -67,9 +87,32 @@ public class ServerMain {
             // create the server's router
             var router = new Router(logic, auth);
 
+            // create the buffer pool of the connections and export its statistics
+            var bufferPool = new BufferPool(config.bufferPoolMaxBytes > 0 ? config.bufferPoolMaxBytes
+                    : DEFAULT_BUFFER_POOL_MAX_BYTES);
+            exportMBean(bufferPool, "winsome:type=BufferPool");
+
+            // create the workers pools, one for each route class, and export
+            // their statistics
+            var workerPools = new EnumMap<RouteClass, WorkerPool>(RouteClass.class);
+            for (var routeClass : RouteClass.values()) {
+                var poolConfig = config.routeClassPools != null ? config.routeClassPools.get(routeClass) : null;
+                var workerPool = createWorkerPool(config, poolConfig);
+                workerPools.put(routeClass, workerPool);
+                exportMBean(workerPool, "winsome:type=WorkerPool,routeClass=" + routeClass);
+            }
+
+            // create the compressor of the response bodies and export its
+            // statistics, if the compression is enabled
+            var compressor = createResponseCompressor(config);
+            if (compressor != null) {
+                exportMBean(compressor, "winsome:type=ResponseCompressor");
+            }
+
             // create the REST server on the specified address and port
             var tcpAddress = new InetSocketAddress(config.serverAddress, config.serverPort);
-            var RESTserver = new RESTServerManager(tcpAddress, router);
+            var RESTserver = new RESTServerManager(tcpAddress, router, config.reactorThreads, workerPools,
+                    bufferPool, compressor, createConnectionLimits(config));
 
             // start the reward calculator
             rewardsCalculator.start();
@@ -78,7 +121,13 @@ public class ServerMain {
             persistenceManager.start();
 
             // start the REST server
-            RESTserver.serve();
+            try {
+                RESTserver.serve();
+            } finally {
+                if (compressor != null) {
+                    compressor.close();
+                }
+            }
         } catch (IOException | InvalidRouteAnnotationException e) {
             e.printStackTrace();
         }
@@ -93,8 +142,7 @@ public class ServerMain {
      */
     private static void loadDbFromFile(Database database, String dbPath) {
         try {
-            var mapper = new ObjectMapper();
-            var db = mapper.readValue(new File(dbPath), SerializableDatabase.class);
+            SerializableDatabase db = JsonCodecs.readerFor(SerializableDatabase.class).readValue(new File(dbPath));
             if (db != null) {
                 database.fromSerializable(db);
             }
@@ -103,6 +151,103 @@ public class ServerMain {
         }
     }
 
+    /**
+     * Create the connection limits from the server configuration.
+     * A zero value means the default, a negative one disables the limit
+     * 
+     * @param config the server configuration
+     * @return the connection limits
+     */
+    private static ConnectionLimits createConnectionLimits(ServerConfig config) {
+        return new ConnectionLimits(
+                config.idleTimeoutMillis != 0 ? config.idleTimeoutMillis : DEFAULT_IDLE_TIMEOUT_MILLIS,
+                config.headerReadTimeoutMillis != 0 ? config.headerReadTimeoutMillis
+                        : DEFAULT_HEADER_READ_TIMEOUT_MILLIS,
+                config.bodyReadTimeoutMillis != 0 ? config.bodyReadTimeoutMillis : DEFAULT_BODY_READ_TIMEOUT_MILLIS,
+                config.maxConnections != 0 ? config.maxConnections : DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Create the compressor of the response bodies from the server
+     * configuration. A zero value means the default, a negative one disables
+     * the compression
+     * 
+     * @param config the server configuration
+     * @return the compressor, null if the compression is disabled
+     */
+    private static ResponseCompressor createResponseCompressor(ServerConfig config) {
+        if (config.compressionMinBytes < 0 || config.compressionLevel < 0) {
+            return null;
+        }
+        var minBytes = config.compressionMinBytes != 0 ? config.compressionMinBytes
+                : DEFAULT_COMPRESSION_MIN_BYTES;
+        var level = config.compressionLevel != 0 ? Math.min(config.compressionLevel, Deflater.BEST_COMPRESSION)
+                : Deflater.DEFAULT_COMPRESSION;
+        return new ResponseCompressor(minBytes, level);
+    }
+
+    /**
+     * Create the workers pool of a route class. The settings of the route
+     * class override the global ones
+     * 
+     * @param config     the server configuration
+     * @param poolConfig the settings of the route class, null if it has none
+     * @return the workers pool
+     */
+    private static WorkerPool createWorkerPool(ServerConfig config, WorkerPoolConfig poolConfig) {
+        if (poolConfig == null) {
+            poolConfig = new WorkerPoolConfig();
+        }
+        var processors = Runtime.getRuntime().availableProcessors();
+        var coreThreads = poolConfig.workerCoreThreads > 0 ? poolConfig.workerCoreThreads
+                : config.workerCoreThreads > 0 ? config.workerCoreThreads : processors;
+        var maxThreads = poolConfig.workerMaxThreads > 0 ? poolConfig.workerMaxThreads
+                : config.workerMaxThreads > 0 ? config.workerMaxThreads : processors * 8;
+        var queueCapacity = poolConfig.workerQueueCapacity > 0 ? poolConfig.workerQueueCapacity
+                : config.workerQueueCapacity > 0 ? config.workerQueueCapacity : 1024;
+        var retryAfterSeconds = config.retryAfterSeconds > 0 ? config.retryAfterSeconds : 1;
+        var mode = poolConfig.workerMode != null ? poolConfig.workerMode
+                : config.workerMode != null ? config.workerMode : "bounded";
+        var queueDeadlineMillis = config.queueDeadlineMillis != 0 ? config.queueDeadlineMillis
+                : DEFAULT_QUEUE_DEADLINE_MILLIS;
+
+        switch (mode) {
+            case "cached":
+                return WorkerPool.cached();
+            case "virtual":
+                // admit as many requests as the bounded pool would
+                var virtualPool = WorkerPool.virtual(maxThreads + queueCapacity, retryAfterSeconds,
+                        queueDeadlineMillis);
+                if (virtualPool != null) {
+                    return virtualPool;
+                }
+                System.out.println("Virtual threads are not supported by this runtime, using bounded");
+                break;
+            case "bounded":
+                break;
+            default:
+                System.out.println("Unknown worker mode " + mode + ", using bounded");
+        }
+        return WorkerPool.bounded(coreThreads, Math.max(coreThreads, maxThreads), queueCapacity, retryAfterSeconds,
+                queueDeadlineMillis);
+    }
+
+    /**
+     * Register a management bean to the platform MBean server, so that it can
+     * be inspected with JMX tools such as jconsole. If the registration fails
+     * the server keeps working without exporting the bean
+     * 
+     * @param mbean the management bean
+     * @param name  the object name of the bean
+     */
+    private static void exportMBean(Object mbean, String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, new ObjectName(name));
+        } catch (JMException e) {
+            System.out.println("Failed to export " + name);
+        }
+    }
+
     /**
      * Attempt to get the server's config from path
      * 
@@ -112,8 +257,7 @@ public class ServerMain {
      */
     private static ServerConfig getServerConfig(String configPath)
             throws IOException {
-        var mapper = new ObjectMapper();
-        return mapper.readValue(new File(configPath), ServerConfig.class);
+        return JsonCodecs.readerFor(ServerConfig.class).readValue(new File(configPath));
     }
 
     /**
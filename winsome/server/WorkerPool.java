@@ -0,0 +1,211 @@
+package winsome.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The pool of threads that execute the requests.
+ * A bounded pool has a maximum number of threads and a bounded queue: when
+ * both are full new requests are rejected, and the reactor answers them with
+ * SERVICE UNAVAILABLE without involving any worker. A cached pool creates a
+ * new thread whenever no idle one is available and never rejects.
+ * A virtual pool runs every request on its own virtual thread, so that
+ * requests blocked on the database lock, on RMI notifications or on the BTC
+ * exchange service do not hold a platform thread; the number of requests in
+ * flight is bounded and the exceeding ones are rejected.
+ * 
+ * Before executing a request a worker checks that it is still worth it: if
+ * the client has gone away the request is dropped, and if it has waited past
+ * the queue deadline it is answered with SERVICE UNAVAILABLE; in both cases
+ * the database is not touched.
+ */
+public class WorkerPool implements WorkerPoolMXBean {
+    // how long an idle thread above the core size is kept alive
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    // the underlying executor
+    private ExecutorService executor;
+    // the maximum number of requests in flight, 0 if the bound is enforced by
+    // the executor itself
+    private final int maxInFlight;
+    // the number of seconds that a rejected client is asked to wait
+    private final int retryAfterSeconds;
+    // the maximum time a request can wait before being executed, not positive
+    // if there is no deadline
+    private final long queueDeadlineMillis;
+
+    // the number of requests accepted and not yet completed
+    private AtomicInteger inFlightRequests = new AtomicInteger(0);
+    // the number of requests that are being executed
+    private AtomicInteger activeRequests = new AtomicInteger(0);
+    // the number of completed requests
+    private AtomicLong completedRequests = new AtomicLong(0);
+    // the number of rejected requests
+    private AtomicLong rejectedRequests = new AtomicLong(0);
+    // the number of requests dropped because the client had gone away
+    private AtomicLong cancelledRequests = new AtomicLong(0);
+    // the number of requests that expired in the queue
+    private AtomicLong expiredRequests = new AtomicLong(0);
+
+    private WorkerPool(ExecutorService executor, int maxInFlight, int retryAfterSeconds, long queueDeadlineMillis) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.queueDeadlineMillis = queueDeadlineMillis;
+    }
+
+    /**
+     * Create a bounded workers pool
+     * 
+     * @param coreThreads         the number of threads kept alive when idle
+     * @param maxThreads          the maximum number of threads
+     * @param queueCapacity       the maximum number of requests waiting for a
+     *                            thread
+     * @param retryAfterSeconds   the number of seconds that a rejected client
+     *                            is asked to wait before retrying
+     * @param queueDeadlineMillis the maximum time a request can wait before
+     *                            being executed, not positive for no
+     *                            deadline
+     * @return the new workers pool
+     */
+    public static WorkerPool bounded(int coreThreads, int maxThreads, int queueCapacity, int retryAfterSeconds,
+            long queueDeadlineMillis) {
+        if (coreThreads < 0 || maxThreads <= 0 || maxThreads < coreThreads || queueCapacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        var executor = new ThreadPoolExecutor(coreThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+        return new WorkerPool(executor, 0, retryAfterSeconds, queueDeadlineMillis);
+    }
+
+    /**
+     * Create an unbounded workers pool, that never rejects a request
+     * 
+     * @return the new workers pool
+     */
+    public static WorkerPool cached() {
+        return new WorkerPool(Executors.newCachedThreadPool(), 0, 0, 0);
+    }
+
+    /**
+     * Create a workers pool that runs every request on a new virtual thread.
+     * Virtual threads are available from Java 21, so the executor is looked
+     * up reflectively to keep the server runnable on older runtimes
+     * 
+     * @param maxInFlight         the maximum number of requests in flight
+     * @param retryAfterSeconds   the number of seconds that a rejected client
+     *                            is asked to wait before retrying
+     * @param queueDeadlineMillis the maximum time a request can wait before
+     *                            being executed, not positive for no
+     *                            deadline
+     * @return the new workers pool, null if the runtime does not support
+     *         virtual threads
+     */
+    public static WorkerPool virtual(int maxInFlight, int retryAfterSeconds, long queueDeadlineMillis) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException();
+        }
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            var executor = (ExecutorService) factory.invoke(null);
+            return new WorkerPool(executor, maxInFlight, retryAfterSeconds, queueDeadlineMillis);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Submit a request to the pool
+     * 
+     * @param task the request executor
+     * @return true if the request has been accepted, false if it has been
+     *         rejected because the pool is saturated
+     */
+    public boolean submit(RequestExecutor task) {
+        var inFlight = this.inFlightRequests.incrementAndGet();
+        if (this.maxInFlight > 0 && inFlight > this.maxInFlight) {
+            this.inFlightRequests.decrementAndGet();
+            this.rejectedRequests.incrementAndGet();
+            return false;
+        }
+        try {
+            this.executor.execute(() -> {
+                this.activeRequests.incrementAndGet();
+                try {
+                    execute(task);
+                } finally {
+                    this.activeRequests.decrementAndGet();
+                    this.inFlightRequests.decrementAndGet();
+                    this.completedRequests.incrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            this.inFlightRequests.decrementAndGet();
+            this.rejectedRequests.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void execute(RequestExecutor task) {
+        if (task.isCancelled()) {
+            // the client has gone away while the request was queued
+            this.cancelledRequests.incrementAndGet();
+            return;
+        }
+        if (this.queueDeadlineMillis > 0 && task.getAgeMillis() > this.queueDeadlineMillis) {
+            // the client has probably given up already, and executing the
+            // request would only make the queue longer
+            this.expiredRequests.incrementAndGet();
+            task.reject(this.retryAfterSeconds);
+            return;
+        }
+        task.run();
+    }
+
+    /**
+     * @return the number of seconds that a rejected client is asked to wait
+     *         before retrying
+     */
+    public int getRetryAfterSeconds() {
+        return this.retryAfterSeconds;
+    }
+
+    public int getActiveThreads() {
+        return this.activeRequests.get();
+    }
+
+    public int getPoolSize() {
+        if (this.executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) this.executor).getPoolSize();
+        }
+        // every request in flight has its own virtual thread
+        return this.inFlightRequests.get();
+    }
+
+    public int getQueueDepth() {
+        return this.inFlightRequests.get() - this.activeRequests.get();
+    }
+
+    public long getCompletedRequests() {
+        return this.completedRequests.get();
+    }
+
+    public long getRejectedRequests() {
+        return this.rejectedRequests.get();
+    }
+
+    public long getCancelledRequests() {
+        return this.cancelledRequests.get();
+    }
+
+    public long getExpiredRequests() {
+        return this.expiredRequests.get();
+    }
+}
@@ -0,0 +1,14 @@
+package winsome.server;
+
+/**
+ * Class that describes the type of the configuration of the workers pool of a
+ * route class. Every value that is not set is taken from the global workers
+ * pool settings of the server configuration
+ */
+public class WorkerPoolConfig {
+    // the workers pool mode, "bounded", "cached" or "virtual"
+    public String workerMode;
+    public int workerCoreThreads;
+    public int workerMaxThreads;
+    public int workerQueueCapacity;
+}
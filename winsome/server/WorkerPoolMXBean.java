@@ -0,0 +1,44 @@
+package winsome.server;
+
+/**
+ * Management interface of the workers pool, used to export its statistics
+ */
+public interface WorkerPoolMXBean {
+    /**
+     * @return the number of threads that are executing a request
+     */
+    public int getActiveThreads();
+
+    /**
+     * @return the number of threads in the pool
+     */
+    public int getPoolSize();
+
+    /**
+     * @return the number of requests waiting in the queue
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return the number of requests that have been executed
+     */
+    public long getCompletedRequests();
+
+    /**
+     * @return the number of requests that have been rejected because the pool
+     *         was saturated
+     */
+    public long getRejectedRequests();
+
+    /**
+     * @return the number of requests that have been dropped before their
+     *         execution because the client had gone away
+     */
+    public long getCancelledRequests();
+
+    /**
+     * @return the number of requests that have been answered with SERVICE
+     *         UNAVAILABLE because they waited in the queue past the deadline
+     */
+    public long getExpiredRequests();
+}
@@ -516,6 +516,22 @@ public class Database {
         }
     }
 
+    /**
+     * Get the version of a post, that changes every time the post is rated,
+     * commented or deleted
+     * 
+     * @param postId the post id
+     * @return the version, -1 if postId is not a valid id
+     */
+    public long getPostVersion(int postId) {
+        Wrapper<Long> version = new Wrapper<>(-1L);
+        this.posts.computeIfPresent(postId, (k, v) -> {
+            version.setValue(v.getVersion());
+            return v;
+        });
+        return version.getValue();
+    }
+
     /**
      * Get the post from postId
      * 
@@ -747,8 +763,12 @@ public class Database {
             v.removeRewinnedPost(postId);
         });
 
-        // remove from post list
-        this.posts.remove(postId);
+        // remove from post list, after changing its version so that no tag
+        // computed from now on matches the deleted post
+        this.posts.computeIfPresent(postId, (k, v) -> {
+            v.markDeleted();
+            return null;
+        });
     }
 
     /**
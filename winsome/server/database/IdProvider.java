@@ -1,17 +1,21 @@
 package winsome.server.database;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * A simple id provider. It has an internal state and provides with a thread
  * safe way of getting new post ids
  */
 public class IdProvider {
-    private int counter = 0;
+    // NOTE: an atomic counter is used instead of a synchronized method, that
+    // would pin a virtual thread to its carrier while holding the monitor
+    private AtomicInteger counter = new AtomicInteger(0);
 
     public IdProvider() {
     }
 
     public IdProvider(int initialCounter) {
-        this.counter = initialCounter;
+        this.counter.set(initialCounter);
     }
 
     /**
@@ -20,9 +24,8 @@ public class IdProvider {
      * 
      * @return a new id
      */
-    public synchronized int getNewId() {
-        this.counter++;
-        return this.counter;
+    public int getNewId() {
+        return this.counter.incrementAndGet();
     }
 
     /**
@@ -32,7 +35,7 @@ public class IdProvider {
      * @return the current state
      */
     public int getCurrentState() {
-        return this.counter;
+        return this.counter.get();
     }
 
     /**
@@ -41,6 +44,6 @@ public class IdProvider {
      * 
      */
     public void setCurrentState(int state) {
-        this.counter = state;
+        this.counter.set(state);
     }
 }
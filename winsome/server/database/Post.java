@@ -27,6 +27,9 @@ public class Post {
     private int negativeVotes = 0;
     // the list of the post's comments
     private List<Comment> comments = new ArrayList<Comment>();
+    // the version of the post, incremented every time the post visible to the
+    // users changes, used to compute the entity tags
+    private long version = 0;
 
     // ---- rewards statistics
 
@@ -89,6 +92,7 @@ public class Post {
             this.negativeVotes++;
             this.newNegativeVotes++;
         }
+        this.version++;
     }
 
     /**
@@ -103,6 +107,7 @@ public class Post {
         }
         var comment = new Comment(author, content);
         this.comments.add(comment);
+        this.version++;
 
         // increment the counter in newCommentsCount
         this.newCommentsCount.compute(author, (k, v) -> {
@@ -219,6 +224,17 @@ public class Post {
         return new ArrayList<>(this.comments);
     }
 
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Increment the version of the post, when it is deleted
+     */
+    public void markDeleted() {
+        this.version++;
+    }
+
     /**
      * Clone object to a serializable version of it
      * 
@@ -239,6 +255,7 @@ public class Post {
         for (var c : this.comments) {
             out.comments.add(c.cloneToSerializable());
         }
+        out.version = this.version;
 
         // rewards statistics
         out.age = this.age;
@@ -269,6 +286,7 @@ public class Post {
             newComment.fromSerializable(c);
             this.comments.add(newComment);
         }
+        this.version = post.version;
 
         // rewards statistics
         this.age = post.age;
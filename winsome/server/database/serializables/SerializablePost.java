@@ -13,6 +13,7 @@ public class SerializablePost {
     public int positiveVotes;
     public int negativeVotes;
     public List<SerializableComment> comments;
+    public long version;
 
     // rewards statistics
     public long age;